@@ -4,7 +4,7 @@ echo.
 
 if not exist "out" mkdir out
 
-javac -d out -encoding UTF-8 src\models\*.java src\algorithms\*.java src\simulation\*.java src\gui\*.java src\App.java
+javac -d out -encoding UTF-8 src\models\*.java src\algorithms\*.java src\simulation\*.java src\storage\*.java src\gui\*.java src\App.java
 
 if %ERRORLEVEL% EQU 0 (
     echo.
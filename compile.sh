@@ -5,7 +5,7 @@ echo
 
 mkdir -p out
 
-javac -d out -encoding UTF-8 src/models/*.java src/algorithms/*.java src/simulation/*.java src/gui/*.java src/App.java
+javac -d out -encoding UTF-8 src/models/*.java src/algorithms/*.java src/simulation/*.java src/storage/*.java src/gui/*.java src/App.java
 
 if [ $? -eq 0 ]; then
     echo
@@ -0,0 +1,114 @@
+package algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Monotone bucket priority queue for Dial's shortest path algorithm.
+ * Keys are router distances; as long as every edge cost lies in [0, maxCost],
+ * all queued keys fall within maxCost of the current minimum, so a circular
+ * array of maxCost + 1 buckets holds them without collisions.
+ *
+ * Each bucket is an intrusive doubly linked list over router ids, so
+ * insertion, decrease-key and removal of the minimum allocate nothing.
+ */
+class BucketQueue {
+    private static final int NONE = -1;
+    private static final int ABSENT = -2; // prev[] marker for routers not in the queue
+    
+    private final int[] heads; // bucket -> first router id
+    private final int[] next;
+    private final int[] prev;
+    private final int[] keys;
+    private int current; // smallest key that can still be in the queue
+    private int size;
+    
+    BucketQueue(int capacity, int maxCost) {
+        this.heads = new int[maxCost + 1];
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.keys = new int[capacity];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(prev, ABSENT);
+        this.current = 0;
+        this.size = 0;
+    }
+    
+    int capacity() {
+        return next.length;
+    }
+    
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    boolean contains(int id) {
+        return prev[id] != ABSENT;
+    }
+    
+    /**
+     * Insert a router, or move it to a smaller key if it is already queued
+     */
+    void insertOrDecrease(int id, int key) {
+        if (contains(id)) {
+            unlink(id);
+        }
+        keys[id] = key;
+        int bucket = key % heads.length;
+        int head = heads[bucket];
+        next[id] = head;
+        prev[id] = NONE;
+        if (head != NONE) {
+            prev[head] = id;
+        }
+        heads[bucket] = id;
+        size++;
+    }
+    
+    /**
+     * Remove and return a router with the smallest key
+     */
+    int pollMin() {
+        if (size == 0) {
+            return NONE;
+        }
+        int bucket = current % heads.length;
+        while (heads[bucket] == NONE) {
+            current++;
+            bucket = bucket + 1 == heads.length ? 0 : bucket + 1;
+        }
+        int id = heads[bucket];
+        unlink(id);
+        return id;
+    }
+    
+    /**
+     * Drop every queued router and start again from key 0
+     */
+    void clear() {
+        if (size > 0) {
+            for (int bucket = 0; bucket < heads.length; bucket++) {
+                for (int id = heads[bucket]; id != NONE; id = next[id]) {
+                    prev[id] = ABSENT;
+                }
+                heads[bucket] = NONE;
+            }
+            size = 0;
+        }
+        current = 0;
+    }
+    
+    private void unlink(int id) {
+        int before = prev[id];
+        int after = next[id];
+        if (before == NONE) {
+            heads[keys[id] % heads.length] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        }
+        prev[id] = ABSENT;
+        size--;
+    }
+}
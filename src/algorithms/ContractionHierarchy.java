@@ -0,0 +1,444 @@
+package algorithms;
+
+import models.Router;
+import models.TopologySnapshot;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Contraction hierarchy over a topology snapshot, for answering many route
+ * queries on a topology that does not change.
+ *
+ * Routers are contracted one by one, least important first. Contracting a
+ * router removes it from the remaining graph; wherever the only shortest path
+ * between two of its neighbors led through it, a shortcut link with the
+ * combined cost is added between them. Importance is mainly the number of
+ * shortcuts a contraction would add minus the links it removes; the number
+ * of neighbors already contracted and the depth of the hierarchy below a
+ * router are added so that contraction spreads evenly over the graph.
+ *
+ * Every shortest path then climbs to its most important router and descends
+ * again, so a query runs Dijkstra upwards from both ends over a small
+ * upward graph. Shortcuts remember the router they bypass, which unpacks
+ * them into the original links.
+ *
+ * The index is immutable once built and belongs to the topology epoch of
+ * its snapshot.
+ */
+final class ContractionHierarchy {
+    /** Routers a witness search may settle before it gives up and a shortcut is added */
+    private static final int WITNESS_SETTLE_LIMIT = 100;
+    /** The same limit while only estimating priorities, where precision matters less */
+    private static final int PRIORITY_SETTLE_LIMIT = 20;
+    /** Neighbors with more links than this are only re-estimated when they reach the queue head */
+    private static final int REFRESH_DEGREE_LIMIT = 8;
+    
+    private final long epoch;
+    private final int[] ranks; // router id -> contraction order
+    // Upward graph: links to more important routers, with the router a shortcut bypasses (-1 for real links)
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final int[] upCosts;
+    private final int[] upMiddles;
+    
+    private ContractionHierarchy(long epoch, int[] ranks, int[] upOffsets, int[] upTargets,
+                                 int[] upCosts, int[] upMiddles) {
+        this.epoch = epoch;
+        this.ranks = ranks;
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upCosts = upCosts;
+        this.upMiddles = upMiddles;
+    }
+    
+    /**
+     * Whether a hierarchy can be built: no negative costs, and no path cost
+     * close enough to overflow an int
+     */
+    static boolean canBuild(TopologySnapshot topology) {
+        return topology.getMinCost() >= 0
+                && (long) topology.getMaxCost() * Math.max(topology.size() - 1, 1) < Integer.MAX_VALUE / 2;
+    }
+    
+    static ContractionHierarchy build(TopologySnapshot topology) {
+        return new Builder(topology).build();
+    }
+    
+    long getEpoch() {
+        return epoch;
+    }
+    
+    /**
+     * Search upwards from both routers and return the router where the
+     * shortest path peaks, or -1 if none connects them. The path cost is the
+     * sum of the two searches' distances to that router.
+     */
+    int query(int sourceId, int destinationId, RouteQuery.Search forward, RouteQuery.Search backward) {
+        forward.start(sourceId, 0);
+        backward.start(destinationId, 0);
+        if (sourceId == destinationId) {
+            return sourceId;
+        }
+        int best = Router.INFINITY;
+        int meeting = -1;
+        
+        // Unlike plain bidirectional Dijkstra, both searches must run until
+        // their smallest key reaches the best cost, as the peak can be far
+        // from the middle
+        boolean forwardTurn = true;
+        while (true) {
+            boolean forwardOpen = !forward.heap.isEmpty() && forward.heap.minKey() < best;
+            boolean backwardOpen = !backward.heap.isEmpty() && backward.heap.minKey() < best;
+            if (!forwardOpen && !backwardOpen) {
+                break;
+            }
+            boolean useForward = forwardOpen && (forwardTurn || !backwardOpen);
+            forwardTurn = !forwardTurn;
+            RouteQuery.Search side = useForward ? forward : backward;
+            RouteQuery.Search other = useForward ? backward : forward;
+            
+            int u = side.heap.pollMin();
+            side.settled++;
+            int distance = side.distances[u];
+            int remaining = other.distance(u);
+            if (remaining != Router.INFINITY && (long) distance + remaining < best) {
+                best = distance + remaining;
+                meeting = u;
+            }
+            if (isStalled(u, distance, side)) {
+                continue;
+            }
+            for (int slot = upOffsets[u], end = upOffsets[u + 1]; slot < end; slot++) {
+                int v = upTargets[slot];
+                int newDistance = distance + upCosts[slot];
+                if (newDistance < side.distance(v)) {
+                    side.reach(v, newDistance, u);
+                    side.heap.insertOrDecrease(v, newDistance);
+                }
+            }
+        }
+        return meeting;
+    }
+    
+    /**
+     * Stall on demand: a router reached more cheaply through a more important
+     * neighbor than by the upward search itself cannot be on a shortest
+     * up-down path, so there is no point relaxing its links
+     */
+    private boolean isStalled(int u, int distance, RouteQuery.Search side) {
+        for (int slot = upOffsets[u], end = upOffsets[u + 1]; slot < end; slot++) {
+            int v = upTargets[slot];
+            int through = side.distance(v);
+            if (through != Router.INFINITY && (long) through + upCosts[slot] < distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * First real hop from a towards b over the hierarchy link between them
+     */
+    int firstHop(int a, int b) {
+        int middle = middle(a, b);
+        while (middle >= 0) {
+            b = middle;
+            middle = middle(a, b);
+        }
+        return b;
+    }
+    
+    /**
+     * Append the routers of the hierarchy link from a to b, without a, as
+     * original links
+     */
+    void unpack(int a, int b, TopologySnapshot topology, List<Router> path) {
+        int[] stack = new int[16];
+        int size = 0;
+        stack[size++] = a;
+        stack[size++] = b;
+        while (size > 0) {
+            int to = stack[--size];
+            int from = stack[--size];
+            int middle = middle(from, to);
+            if (middle < 0) {
+                path.add(topology.getRouter(to));
+                continue;
+            }
+            if (size + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // The second half goes on the stack first, so it is unpacked last
+            stack[size++] = middle;
+            stack[size++] = to;
+            stack[size++] = from;
+            stack[size++] = middle;
+        }
+    }
+    
+    /**
+     * Router bypassed by the hierarchy link between a and b, -1 if it is a
+     * real link. The link is stored upwards from the less important end.
+     */
+    private int middle(int a, int b) {
+        int low = ranks[a] < ranks[b] ? a : b;
+        int high = low == a ? b : a;
+        for (int slot = upOffsets[low], end = upOffsets[low + 1]; slot < end; slot++) {
+            if (upTargets[slot] == high) {
+                return upMiddles[slot];
+            }
+        }
+        throw new IllegalStateException("No hierarchy link between " + a + " and " + b);
+    }
+    
+    /**
+     * Contracts the routers of a snapshot over mutable adjacency lists.
+     * A contracted router is unlinked from its neighbors but keeps its own
+     * list, which then holds exactly its upward links.
+     */
+    private static final class Builder {
+        private final TopologySnapshot topology;
+        private final int n;
+        private final int[][] targets;
+        private final int[][] costs;
+        private final int[][] middles;
+        private final int[] degrees;
+        private final int[] contractedNeighbors;
+        private final int[] levels; // depth of the hierarchy below each router
+        
+        // Witness search state, stamped so each search only touches what it reaches
+        private final int[] distances;
+        private final int[] stamps;
+        private final int[] targetStamps; // neighbors the current search is after
+        private int stamp;
+        private final IndexedHeap heap;
+        private int settleLimit = WITNESS_SETTLE_LIMIT;
+        
+        // Shortcuts found by the last estimated or real contraction
+        private int[] shortcutFrom = new int[16];
+        private int[] shortcutTo = new int[16];
+        private int[] shortcutCosts = new int[16];
+        private int found;
+        
+        Builder(TopologySnapshot topology) {
+            this.topology = topology;
+            this.n = topology.size();
+            this.targets = new int[n][];
+            this.costs = new int[n][];
+            this.middles = new int[n][];
+            this.degrees = new int[n];
+            for (int id = 0; id < n; id++) {
+                int degree = topology.degree(id);
+                targets[id] = new int[Math.max(degree, 2)];
+                costs[id] = new int[Math.max(degree, 2)];
+                middles[id] = new int[Math.max(degree, 2)];
+                for (int i = 0, slot = topology.offset(id); i < degree; i++, slot++) {
+                    targets[id][i] = topology.target(slot);
+                    costs[id][i] = topology.cost(slot);
+                    middles[id][i] = -1;
+                }
+                degrees[id] = degree;
+            }
+            this.contractedNeighbors = new int[n];
+            this.levels = new int[n];
+            this.distances = new int[n];
+            this.stamps = new int[n];
+            this.targetStamps = new int[n];
+            this.heap = new IndexedHeap(Math.max(n, 1));
+        }
+        
+        ContractionHierarchy build() {
+            IndexedHeap queue = new IndexedHeap(Math.max(n, 1));
+            for (int id = 0; id < n; id++) {
+                queue.insertOrDecrease(id, priority(id));
+            }
+            
+            int[] ranks = new int[n];
+            int rank = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.pollMin();
+                // Priorities go stale as neighbors are contracted; contract v
+                // only if its fresh priority still beats the next candidate
+                int current = priority(v);
+                if (!queue.isEmpty() && current > queue.minKey()) {
+                    queue.insertOrUpdate(v, current);
+                    continue;
+                }
+                contract(v);
+                ranks[v] = rank++;
+                for (int i = 0; i < degrees[v]; i++) {
+                    int neighbor = targets[v][i];
+                    contractedNeighbors[neighbor]++;
+                    levels[neighbor] = Math.max(levels[neighbor], levels[v] + 1);
+                    if (degrees[neighbor] <= REFRESH_DEGREE_LIMIT) {
+                        queue.insertOrUpdate(neighbor, priority(neighbor));
+                    }
+                }
+            }
+            
+            int[] upOffsets = new int[n + 1];
+            for (int id = 0; id < n; id++) {
+                upOffsets[id + 1] = upOffsets[id] + degrees[id];
+            }
+            int total = upOffsets[n];
+            int[] upTargets = new int[total];
+            int[] upCosts = new int[total];
+            int[] upMiddles = new int[total];
+            for (int id = 0; id < n; id++) {
+                System.arraycopy(targets[id], 0, upTargets, upOffsets[id], degrees[id]);
+                System.arraycopy(costs[id], 0, upCosts, upOffsets[id], degrees[id]);
+                System.arraycopy(middles[id], 0, upMiddles, upOffsets[id], degrees[id]);
+                // Not needed any more; let the lists go as the graph is copied
+                targets[id] = null;
+                costs[id] = null;
+                middles[id] = null;
+            }
+            return new ContractionHierarchy(topology.getEpoch(), ranks, upOffsets, upTargets, upCosts, upMiddles);
+        }
+        
+        private int priority(int v) {
+            settleLimit = PRIORITY_SETTLE_LIMIT;
+            findShortcuts(v);
+            settleLimit = WITNESS_SETTLE_LIMIT;
+            return 2 * (found - degrees[v]) + contractedNeighbors[v] + levels[v];
+        }
+        
+        private void contract(int v) {
+            findShortcuts(v);
+            for (int k = 0; k < found; k++) {
+                addLink(shortcutFrom[k], shortcutTo[k], shortcutCosts[k], v);
+                addLink(shortcutTo[k], shortcutFrom[k], shortcutCosts[k], v);
+            }
+            for (int i = 0; i < degrees[v]; i++) {
+                removeLink(targets[v][i], v);
+            }
+        }
+        
+        /**
+         * Collect the shortcuts contracting v needs: for every pair of its
+         * neighbors, one unless a witness path avoiding v is at most as cheap
+         */
+        private void findShortcuts(int v) {
+            found = 0;
+            int degree = degrees[v];
+            for (int i = 0; i + 1 < degree; i++) {
+                int u = targets[v][i];
+                int toU = costs[v][i];
+                int limit = 0; // most expensive path through v to a later neighbor
+                for (int j = i + 1; j < degree; j++) {
+                    limit = Math.max(limit, toU + costs[v][j]);
+                }
+                witnessSearch(v, i, limit);
+                for (int j = i + 1; j < degree; j++) {
+                    int via = toU + costs[v][j];
+                    if (witnessDistance(targets[v][j]) > via) {
+                        recordShortcut(u, targets[v][j], via);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Dijkstra from the i-th neighbor of v over the remaining graph
+         * without v, until the neighbors after it are settled, the given cost
+         * is exceeded or settleLimit routers are settled. Routers it did not
+         * reach count as having no witness.
+         */
+        private void witnessSearch(int v, int i, int limit) {
+            heap.clear();
+            if (++stamp == 0) {
+                // Stamp wrapped around, so old marks could look current
+                Arrays.fill(stamps, 0);
+                Arrays.fill(targetStamps, 0);
+                stamp = 1;
+            }
+            int pending = 0;
+            for (int j = i + 1; j < degrees[v]; j++) {
+                targetStamps[targets[v][j]] = stamp;
+                pending++;
+            }
+            int u = targets[v][i];
+            stamps[u] = stamp;
+            distances[u] = 0;
+            heap.insertOrDecrease(u, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < settleLimit) {
+                int x = heap.pollMin();
+                int distance = distances[x];
+                if (distance > limit) {
+                    break;
+                }
+                settled++;
+                if (targetStamps[x] == stamp && --pending == 0) {
+                    break; // Every neighbor has its final distance
+                }
+                for (int k = 0; k < degrees[x]; k++) {
+                    int y = targets[x][k];
+                    int newDistance = distance + costs[x][k];
+                    if (y != v && newDistance <= limit && newDistance < witnessDistance(y)) {
+                        stamps[y] = stamp;
+                        distances[y] = newDistance;
+                        heap.insertOrDecrease(y, newDistance);
+                    }
+                }
+            }
+        }
+        
+        private int witnessDistance(int id) {
+            return stamps[id] == stamp ? distances[id] : Integer.MAX_VALUE;
+        }
+        
+        private void recordShortcut(int from, int to, int cost) {
+            if (found == shortcutFrom.length) {
+                shortcutFrom = Arrays.copyOf(shortcutFrom, found * 2);
+                shortcutTo = Arrays.copyOf(shortcutTo, found * 2);
+                shortcutCosts = Arrays.copyOf(shortcutCosts, found * 2);
+            }
+            shortcutFrom[found] = from;
+            shortcutTo[found] = to;
+            shortcutCosts[found] = cost;
+            found++;
+        }
+        
+        /**
+         * Add a shortcut from a to b, or lower the cost of the link already there
+         */
+        private void addLink(int a, int b, int cost, int middle) {
+            for (int i = 0; i < degrees[a]; i++) {
+                if (targets[a][i] == b) {
+                    if (cost < costs[a][i]) {
+                        costs[a][i] = cost;
+                        middles[a][i] = middle;
+                    }
+                    return;
+                }
+            }
+            int degree = degrees[a];
+            if (degree == targets[a].length) {
+                targets[a] = Arrays.copyOf(targets[a], degree * 2);
+                costs[a] = Arrays.copyOf(costs[a], degree * 2);
+                middles[a] = Arrays.copyOf(middles[a], degree * 2);
+            }
+            targets[a][degree] = b;
+            costs[a][degree] = cost;
+            middles[a][degree] = middle;
+            degrees[a] = degree + 1;
+        }
+        
+        /**
+         * Drop the link from a to b, moving the last link into its place
+         */
+        private void removeLink(int a, int b) {
+            int last = degrees[a] - 1;
+            for (int i = 0; i <= last; i++) {
+                if (targets[a][i] == b) {
+                    targets[a][i] = targets[a][last];
+                    costs[a][i] = costs[a][last];
+                    middles[a][i] = middles[a][last];
+                    degrees[a] = last;
+                    return;
+                }
+            }
+        }
+    }
+}
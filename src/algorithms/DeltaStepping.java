@@ -0,0 +1,356 @@
+package algorithms;
+
+import models.TopologySnapshot;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Parallel single-source shortest paths by delta-stepping.
+ *
+ * Tentative distances are grouped into buckets of width delta. The lowest
+ * non-empty bucket is emptied by relaxing the light links (cost at most
+ * delta) of all its routers at once, repeating for routers that re-enter it,
+ * and then relaxing their heavy links once. Routers of a bucket are split
+ * over a ForkJoinPool; updates race only on the target's label, which is
+ * lowered with a compare-and-set loop.
+ *
+ * The label packs the distance into the high half of a long and the first
+ * hop into the low half, so the same compare-and-set that keeps the lowest
+ * distance also keeps the lowest first hop among equal-cost paths. Results
+ * are therefore independent of thread timing and match LinkState's Dijkstra
+ * with positive link costs, which is what this engine requires.
+ */
+final class DeltaStepping {
+    /** Routers relaxed by one task; smaller frontiers stay on the calling thread */
+    private static final int PARALLEL_GRAIN = 256;
+    private static final long UNREACHED = Long.MAX_VALUE;
+    
+    private final TopologySnapshot topology;
+    private final int sourceId;
+    private final int delta;
+    private final ForkJoinPool pool;
+    private final AtomicLongArray labels; // router id -> distance << 32 | first hop
+    private final long[] relaxed; // router id -> label its light links were last relaxed with
+    
+    // Routers waiting in later buckets, in a ring: every tentative distance
+    // lies within the largest link cost of the current bucket
+    private final IntBuffer[] ring;
+    private final int[] marks; // router id -> round that last queued it, to drop duplicates
+    private int round;
+    
+    private DeltaStepping(TopologySnapshot topology, int sourceId, int delta, ForkJoinPool pool) {
+        int n = topology.size();
+        this.topology = topology;
+        this.sourceId = sourceId;
+        this.delta = delta;
+        this.pool = pool;
+        this.labels = new AtomicLongArray(n);
+        this.relaxed = new long[n];
+        this.marks = new int[n];
+        this.ring = new IntBuffer[topology.getMaxCost() / delta + 2];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new IntBuffer();
+        }
+    }
+    
+    /**
+     * Whether the topology suits this engine: every link cost positive
+     */
+    static boolean canRun(TopologySnapshot topology) {
+        return topology.size() > 0 && topology.getMinCost() > 0;
+    }
+    
+    /**
+     * Bucket width for the topology: roughly the largest cost divided by the
+     * average degree, so a bucket holds about one link's worth of distance
+     * per router, but never below the smallest cost
+     */
+    static int defaultDelta(TopologySnapshot topology) {
+        long averageDegree = Math.max(1, topology.edgeCount() / Math.max(1, topology.size()));
+        return (int) Math.max(Math.max(1, topology.getMinCost()), topology.getMaxCost() / averageDegree);
+    }
+    
+    /**
+     * Fill scratch.distances, scratch.previous and scratch.firstHops like
+     * LinkState.shortestPaths does. With settleOrder set, scratch.order also
+     * lists the reachable routers by distance.
+     */
+    static void shortestPaths(TopologySnapshot topology, int sourceId, SpfScratch scratch,
+                              ForkJoinPool pool, boolean settleOrder) {
+        DeltaStepping run = new DeltaStepping(topology, sourceId, defaultDelta(topology), pool);
+        run.run();
+        run.export(scratch, settleOrder);
+    }
+    
+    private void run() {
+        int n = topology.size();
+        for (int id = 0; id < n; id++) {
+            labels.set(id, UNREACHED);
+            relaxed[id] = UNREACHED;
+        }
+        labels.set(sourceId, pack(0, sourceId));
+        ring[0].add(sourceId);
+        long pending = 1;
+        long bucket = 0;
+        
+        IntBuffer settled = new IntBuffer(); // routers emptied from the current bucket
+        while (pending > 0) {
+            while (ring[slot(bucket)].size == 0) {
+                bucket++;
+            }
+            IntBuffer entries = ring[slot(bucket)];
+            pending -= entries.size;
+            IntBuffer frontier = new IntBuffer();
+            round++;
+            for (int i = 0; i < entries.size; i++) {
+                int id = entries.values[i];
+                // Skip routers that moved to a lower bucket or were queued twice
+                if (bucketOf(id) == bucket && relaxed[id] != labels.get(id) && marks[id] != round) {
+                    marks[id] = round;
+                    frontier.add(id);
+                }
+            }
+            entries.clear();
+            
+            settled.clear();
+            while (frontier.size > 0) {
+                settled.addAll(frontier);
+                IntBuffer updated = relax(frontier, true);
+                frontier = new IntBuffer();
+                round++;
+                for (int i = 0; i < updated.size; i++) {
+                    int id = updated.values[i];
+                    if (marks[id] == round) {
+                        continue;
+                    }
+                    marks[id] = round;
+                    if (bucketOf(id) == bucket) {
+                        frontier.add(id);
+                    } else {
+                        ring[slot(bucketOf(id))].add(id);
+                        pending++;
+                    }
+                }
+            }
+            
+            // Heavy links lead past this bucket, so one pass with final labels does
+            round++;
+            IntBuffer heavy = new IntBuffer();
+            for (int i = 0; i < settled.size; i++) {
+                int id = settled.values[i];
+                if (marks[id] != round) {
+                    marks[id] = round;
+                    heavy.add(id);
+                }
+            }
+            IntBuffer updated = relax(heavy, false);
+            for (int i = 0; i < updated.size; i++) {
+                ring[slot(bucketOf(updated.values[i]))].add(updated.values[i]);
+                pending++;
+            }
+        }
+    }
+    
+    /**
+     * Relax the light or heavy links of the routers, in parallel for large
+     * frontiers; returns the routers whose labels were lowered, possibly
+     * more than once
+     */
+    private IntBuffer relax(IntBuffer routers, boolean light) {
+        RelaxTask task = new RelaxTask(routers.values, 0, routers.size, light);
+        return routers.size <= PARALLEL_GRAIN ? task.compute() : pool.invoke(task);
+    }
+    
+    private void relaxRouter(int u, boolean light, IntBuffer updated) {
+        long label = labels.get(u);
+        if (light) {
+            relaxed[u] = label;
+        }
+        long distance = label >>> 32;
+        int hop = (int) label;
+        for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+            int cost = topology.cost(slot);
+            if ((cost <= delta) != light) {
+                continue;
+            }
+            int v = topology.target(slot);
+            long newDistance = distance + cost;
+            if (v == sourceId || newDistance >= Integer.MAX_VALUE) {
+                continue;
+            }
+            long candidate = pack(newDistance, u == sourceId ? v : hop);
+            long current = labels.get(v);
+            while (candidate < current) {
+                if (labels.compareAndSet(v, current, candidate)) {
+                    updated.add(v);
+                    break;
+                }
+                current = labels.get(v);
+            }
+        }
+    }
+    
+    private void export(SpfScratch scratch, boolean settleOrder) {
+        int n = topology.size();
+        scratch.reset(n);
+        int[] distances = scratch.distances;
+        int[] firstHops = scratch.firstHops;
+        for (int id = 0; id < n; id++) {
+            long label = labels.get(id);
+            if (label != UNREACHED) {
+                distances[id] = (int) (label >>> 32);
+                firstHops[id] = (int) label;
+            }
+        }
+        
+        // Any neighbor one link closer with the same first hop is a valid
+        // predecessor; take the lowest so the tree does not depend on timing
+        int[] previous = scratch.previous;
+        pool.invoke(new PreviousTask(distances, firstHops, previous, 0, n));
+        
+        if (settleOrder) {
+            long[] keys = new long[n];
+            int count = 0;
+            for (int id = 0; id < n; id++) {
+                if (distances[id] != Integer.MAX_VALUE) {
+                    keys[count++] = (long) distances[id] << 32 | id;
+                }
+            }
+            Arrays.parallelSort(keys, 0, count);
+            for (int i = 0; i < count; i++) {
+                scratch.order[i] = (int) keys[i];
+            }
+            scratch.settledCount = count;
+        }
+    }
+    
+    private void findPrevious(int v, int[] distances, int[] firstHops, int[] previous) {
+        if (v == sourceId || distances[v] == Integer.MAX_VALUE) {
+            return;
+        }
+        int best = -1;
+        for (int slot = topology.offset(v), end = topology.offset(v + 1); slot < end; slot++) {
+            int u = topology.target(slot);
+            if (distances[u] == Integer.MAX_VALUE || (long) distances[u] + topology.cost(slot) != distances[v]) {
+                continue;
+            }
+            boolean sameHop = u == sourceId ? firstHops[v] == v : firstHops[u] == firstHops[v];
+            if (sameHop && (best < 0 || u < best)) {
+                best = u;
+            }
+        }
+        previous[v] = best;
+    }
+    
+    private long bucketOf(int id) {
+        return (labels.get(id) >>> 32) / delta;
+    }
+    
+    private int slot(long bucket) {
+        return (int) (bucket % ring.length);
+    }
+    
+    private static long pack(long distance, int hop) {
+        return distance << 32 | hop;
+    }
+    
+    /**
+     * Relaxes a range of a frontier, splitting it in halves down to PARALLEL_GRAIN
+     */
+    private final class RelaxTask extends RecursiveTask<IntBuffer> {
+        private static final long serialVersionUID = 1L;
+        
+        private final int[] routers;
+        private final int from;
+        private final int to;
+        private final boolean light;
+        
+        RelaxTask(int[] routers, int from, int to, boolean light) {
+            this.routers = routers;
+            this.from = from;
+            this.to = to;
+            this.light = light;
+        }
+        
+        @Override
+        protected IntBuffer compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                IntBuffer updated = new IntBuffer();
+                for (int i = from; i < to; i++) {
+                    relaxRouter(routers[i], light, updated);
+                }
+                return updated;
+            }
+            int middle = (from + to) >>> 1;
+            RelaxTask left = new RelaxTask(routers, from, middle, light);
+            left.fork();
+            IntBuffer right = new RelaxTask(routers, middle, to, light).compute();
+            IntBuffer updated = left.join();
+            updated.addAll(right);
+            return updated;
+        }
+    }
+    
+    private final class PreviousTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final int[] distances;
+        private final int[] firstHops;
+        private final int[] previous;
+        private final int from;
+        private final int to;
+        
+        PreviousTask(int[] distances, int[] firstHops, int[] previous, int from, int to) {
+            this.distances = distances;
+            this.firstHops = firstHops;
+            this.previous = previous;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN * 16) {
+                for (int id = from; id < to; id++) {
+                    findPrevious(id, distances, firstHops, previous);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            PreviousTask left = new PreviousTask(distances, firstHops, previous, from, middle);
+            left.fork();
+            new PreviousTask(distances, firstHops, previous, middle, to).compute();
+            left.join();
+        }
+    }
+    
+    /**
+     * Growable list of router ids
+     */
+    private static final class IntBuffer {
+        int[] values = new int[16];
+        int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        void addAll(IntBuffer other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+        
+        void clear() {
+            size = 0;
+        }
+    }
+}
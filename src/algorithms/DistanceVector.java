@@ -2,22 +2,168 @@ package algorithms;
 
 import models.NetworkGraph;
 import models.Router;
+import models.TopologySnapshot;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Implements Distance Vector Routing Algorithm (Bellman-Ford based).
  * Each router maintains a routing table with destination, cost, and next hop.
  * Routers exchange routing tables with neighbors until convergence.
+ *
+ * In SWEEP mode every iteration has each router read the full tables of all
+ * its neighbors. In TRIGGERED mode only routers whose vectors changed send
+ * updates, and only for the destinations that changed, so the work of a
+ * round is proportional to the number of changes.
+ *
+ * SWEEP updates tables in place, so a router already sees updates made
+ * earlier in the same sweep. PARALLEL runs synchronous rounds instead: every
+ * router recomputes its vector from its neighbors' vectors of the previous
+ * round and writes it straight into its table. One copy of the previous
+ * round's costs and next hops is kept (two n x n int matrices, allocated
+ * once), and only rows that changed are refreshed after each round. Routers
+ * are split across a ForkJoinPool, and since no router reads a value written
+ * in the same round and ties go to the lowest neighbor id, the results do
+ * not depend on the number of threads.
+ *
+ * Routers in every mode can also take worse routes, which after a link
+ * failure leads to counting to infinity. Split horizon and poison
+ * reverse keep a router from offering a route back to the neighbor it goes
+ * through, a hold-down makes a router ignore a lost destination for a number
+ * of rounds so the failure spreads first, and a small infinity metric bounds
+ * how far costs can count up.
  */
 public class DistanceVector {
+    public enum Mode {
+        SWEEP,
+        TRIGGERED,
+        PARALLEL
+    }
+    
+    public enum LoopPrevention {
+        NONE,
+        /** Leave routes out of updates sent to the neighbor they go through */
+        SPLIT_HORIZON,
+        /** Send routes back to the neighbor they go through as unreachable */
+        POISON_REVERSE
+    }
+    
+    /** Routers per task below which a parallel round is not split further */
+    private static final int PARALLEL_GRAIN = 64;
+    
     private NetworkGraph graph;
     private boolean converged;
     private int iteration;
+    private Mode mode;
+    private LoopPrevention loopPrevention;
+    private int infinity; // smallest cost treated as unreachable
+    private int holdDownRounds;
+    private long messages; // neighbor updates sent in total
+    private int startIteration; // iteration and message count when the current run started
+    private long startMessages;
+    private boolean equalCostMultipath;
+    private int[][] holdUntil; // router id -> round a destination is held down until, 0 if not held
+    private ArrayDeque<int[]> holdDowns; // {router, destination, round} in the order they end
+    
+    // Triggered update state
+    private TopologySnapshot triggeredTopology; // topology the tables were last updated for
+    private int[] worklist; // routers with pending updates, in the order they changed
+    private int worklistSize;
+    private int[] round; // routers sending updates in the current round
+    private boolean[] queued; // router id -> already in the worklist
+    private boolean[] fullUpdate; // router id -> must send its whole vector
+    private int[][] changed; // router id -> destinations changed since its last update
+    private int[] changedCount;
+    private long[][] changedMarks; // router id -> bitset of the destinations in changed
+    private int[] destinations; // destinations of the update being sent
+    
+    // Parallel round state
+    private ForkJoinPool pool;
+    private TopologySnapshot parallelTopology; // topology the buffers were loaded for
+    private int[][] previousCosts; // router id -> costs of the previous round
+    private int[][] previousHops; // router id -> next hops of the previous round
+    private boolean[] rowChanged; // router id -> table changed this round, previous row is stale
     
     public DistanceVector(NetworkGraph graph) {
         this.graph = graph;
         this.converged = false;
         this.iteration = 0;
+        this.mode = Mode.SWEEP;
+        this.loopPrevention = LoopPrevention.NONE;
+        this.infinity = Router.INFINITY;
+        this.holdDownRounds = 0;
+        this.holdDowns = new ArrayDeque<>();
+        this.pool = ForkJoinPool.commonPool();
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    /**
+     * Switch the update mode. Takes effect with the next iteration; a switch to
+     * TRIGGERED starts with every router sending its whole vector once.
+     */
+    public void setMode(Mode mode) {
+        if (mode != this.mode) {
+            this.mode = mode;
+            this.triggeredTopology = null;
+            this.parallelTopology = null;
+        }
+    }
+    
+    public LoopPrevention getLoopPrevention() {
+        return loopPrevention;
+    }
+    
+    public void setLoopPrevention(LoopPrevention loopPrevention) {
+        this.loopPrevention = loopPrevention;
+    }
+    
+    public int getInfinity() {
+        return infinity;
+    }
+    
+    /**
+     * Set the smallest cost that counts as unreachable, 16 in RIP. Routes
+     * reaching it are dropped, so counting to infinity stops there.
+     */
+    public void setInfinity(int infinity) {
+        if (infinity <= 0) {
+            throw new IllegalArgumentException("Infinity must be positive: " + infinity);
+        }
+        this.infinity = infinity;
+    }
+    
+    public int getHoldDownRounds() {
+        return holdDownRounds;
+    }
+    
+    /**
+     * Set for how many rounds a router ignores routes to a destination it
+     * just lost; 0 turns hold-down off
+     */
+    public void setHoldDownRounds(int rounds) {
+        if (rounds < 0) {
+            throw new IllegalArgumentException("Hold-down rounds cannot be negative: " + rounds);
+        }
+        this.holdDownRounds = rounds;
+    }
+    
+    /**
+     * Once the tables converge, also store the equal-cost next hops of every
+     * destination, derived from the neighbors' vectors
+     */
+    public void setEqualCostMultipath(boolean enabled) {
+        this.equalCostMultipath = enabled;
+    }
+    
+    /**
+     * Pool running PARALLEL rounds; the common pool by default
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
     }
     
     /**
@@ -25,115 +171,589 @@ public class DistanceVector {
      * Returns true if converged, false otherwise
      */
     public boolean runIteration() {
-        if (graph.getRouters().isEmpty()) {
+        TopologySnapshot topology = graph.getSnapshot();
+        int n = topology.size();
+        if (n == 0) {
+            converged = true;
             return true;
         }
         
+        boolean wasConverged = converged;
+        if (mode == Mode.TRIGGERED) {
+            runTriggeredRound(topology);
+        } else if (mode == Mode.PARALLEL) {
+            runParallelRound(topology);
+        } else {
+            runSweep(topology);
+        }
+        if (converged && !wasConverged && equalCostMultipath) {
+            for (int id = 0; id < n; id++) {
+                EqualCostMultipath.fromNeighborTables(topology, id, infinity);
+            }
+        }
+        return converged;
+    }
+    
+    /**
+     * One iteration where each router recomputes every route from the full
+     * tables of its neighbors, so routes get worse as well as better
+     */
+    private boolean runSweep(TopologySnapshot topology) {
+        int n = topology.size();
+        if (holdUntil == null || holdUntil.length != n) {
+            holdUntil = new int[n][];
+        }
         iteration++;
+        messages += topology.edgeCount();
         boolean changed = false;
         
-        List<Router> allRouters = graph.getRouters();
-        
-        // Each router receives routing tables from neighbors and updates its own
-        for (Router router : allRouters) {
-            // Get current routing table
-            Map<String, Integer> currentTable = new HashMap<>(router.getRoutingTable());
-            Map<String, String> currentNextHop = new HashMap<>(router.getNextHopTable());
-            
-            // Ensure all routers are in the table (initialize missing ones with infinity)
-            for (Router destRouter : allRouters) {
-                String destName = destRouter.getName();
-                if (!currentTable.containsKey(destName)) {
-                    if (destName.equals(router.getName())) {
-                        currentTable.put(destName, 0);
-                        currentNextHop.put(destName, destName);
-                    } else {
-                        currentTable.put(destName, Integer.MAX_VALUE);
-                        currentNextHop.put(destName, "-");
+        // Tables are updated in place, so routers later in the sweep already see
+        // the updates made earlier in the same iteration.
+        for (int id = 0; id < n; id++) {
+            changed |= updateRouter(topology, id, true);
+        }
+        
+        converged = !changed;
+        return converged;
+    }
+    
+    /**
+     * One synchronous round: every router recomputes its vector from the
+     * previous round's vectors of its neighbors, then the buffers swap
+     */
+    private boolean runParallelRound(TopologySnapshot topology) {
+        int n = topology.size();
+        if (parallelTopology == null || parallelTopology.getEpoch() != topology.getEpoch()
+                || !sameRouters(parallelTopology, topology)) {
+            // Load the tables as they are now, which also picks up changed links
+            if (previousCosts == null || previousCosts.length != n) {
+                previousCosts = new int[n][n];
+                previousHops = new int[n][n];
+                rowChanged = new boolean[n];
+            }
+            Arrays.fill(rowChanged, true);
+            pool.invoke(new RoundTask(topology, 0, n, true));
+            if (holdUntil == null || holdUntil.length != n || parallelTopology == null
+                    || !sameRouters(parallelTopology, topology)) {
+                holdUntil = new int[n][]; // Holds in progress survive link changes
+            }
+            parallelTopology = topology;
+        }
+        
+        iteration++;
+        messages += topology.edgeCount();
+        boolean pending = pool.invoke(new RoundTask(topology, 0, n, false));
+        // Every router has read the previous round, so changed rows can catch up now
+        pool.invoke(new RoundTask(topology, 0, n, true));
+        
+        converged = !pending;
+        return converged;
+    }
+    
+    /**
+     * Compute the new vector of one router into its table, from the previous
+     * round or, in place, from the neighbors' current tables. Returns true
+     * if any cost or next hop changed or a destination is still held down,
+     * that is if another round is needed.
+     */
+    private boolean updateRouter(TopologySnapshot topology, int id, boolean inPlace) {
+        Router router = topology.getRouter(id);
+        int n = topology.size();
+        int first = topology.offset(id);
+        int end = topology.offset(id + 1);
+        boolean pending = false;
+        for (int destination = 0; destination < n; destination++) {
+            int oldCost = inPlace ? router.getCost(destination) : previousCosts[id][destination];
+            int oldHop = inPlace ? router.getNextHopId(destination) : previousHops[id][destination];
+            int bestCost = Router.INFINITY;
+            int bestHop = Router.NO_HOP;
+            if (destination == id) {
+                bestCost = 0;
+                bestHop = id;
+            } else {
+                for (int slot = first; slot < end; slot++) {
+                    int neighborId = topology.target(slot);
+                    Router neighbor = inPlace ? topology.getRouter(neighborId) : null;
+                    int neighborHop = inPlace ? neighbor.getNextHopId(destination) : previousHops[neighborId][destination];
+                    if (loopPrevention != LoopPrevention.NONE && neighborHop == id) {
+                        continue; // Left out or poisoned by the neighbor, the same either way here
+                    }
+                    int neighborCost = inPlace ? neighbor.getCost(destination) : previousCosts[neighborId][destination];
+                    int cost = routeCost(topology.cost(slot), neighborCost);
+                    if (cost < bestCost || (cost == bestCost && cost != Router.INFINITY && neighborId < bestHop)) {
+                        bestCost = cost;
+                        bestHop = neighborId;
+                    }
+                }
+                if (holdDownRounds > 0) {
+                    int[] held = holdUntil[id];
+                    if (held != null && held[destination] != 0) {
+                        if (iteration < held[destination]) {
+                            bestCost = Router.INFINITY;
+                            bestHop = Router.NO_HOP;
+                            pending = true;
+                        } else {
+                            held[destination] = 0;
+                        }
+                    } else if (bestCost == Router.INFINITY && oldCost != Router.INFINITY) {
+                        if (held == null) {
+                            held = holdUntil[id] = new int[n];
+                        }
+                        held[destination] = iteration + holdDownRounds;
+                        pending = true;
                     }
                 }
             }
-            
-            // Update routing table based on neighbors' tables
-            for (Map.Entry<Router, Integer> neighborEntry : router.getNeighbors().entrySet()) {
-                Router neighbor = neighborEntry.getKey();
-                int linkCost = neighborEntry.getValue();
-                
-                // Get neighbor's routing table
-                Map<String, Integer> neighborTable = neighbor.getRoutingTable();
-                Map<String, String> neighborNextHop = neighbor.getNextHopTable();
-                
-                // For each destination in neighbor's table
-                for (Map.Entry<String, Integer> destEntry : neighborTable.entrySet()) {
-                    String destination = destEntry.getKey();
-                    int neighborCostToDest = destEntry.getValue();
-                    
-                    // Skip if destination is this router itself
-                    if (destination.equals(router.getName())) {
-                        continue;
+            if (bestCost != oldCost || bestHop != oldHop) {
+                router.setRoute(destination, bestCost, bestHop);
+                if (!inPlace) {
+                    rowChanged[id] = true;
+                }
+                pending = true;
+            }
+        }
+        return pending;
+    }
+    
+    /**
+     * Copy a router's table into the previous round's row
+     */
+    private void refreshRow(TopologySnapshot topology, int id) {
+        Router router = topology.getRouter(id);
+        int[] costs = previousCosts[id];
+        int[] hops = previousHops[id];
+        for (int d = 0; d < costs.length; d++) {
+            costs[d] = router.getCost(d);
+            hops[d] = router.getNextHopId(d);
+        }
+        rowChanged[id] = false;
+    }
+    
+    /**
+     * Updates a range of routers, or with refresh copies their changed
+     * tables into the previous round, splitting it in halves down to PARALLEL_GRAIN
+     */
+    private final class RoundTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+        
+        private final TopologySnapshot topology;
+        private final int from;
+        private final int to;
+        private final boolean refresh;
+        
+        RoundTask(TopologySnapshot topology, int from, int to, boolean refresh) {
+            this.topology = topology;
+            this.from = from;
+            this.to = to;
+            this.refresh = refresh;
+        }
+        
+        @Override
+        protected Boolean compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                boolean changed = false;
+                for (int id = from; id < to; id++) {
+                    if (!refresh) {
+                        changed |= updateRouter(topology, id, false);
+                    } else if (rowChanged[id]) {
+                        refreshRow(topology, id);
                     }
-                    
-                    // Handle infinity case
-                    if (neighborCostToDest == Integer.MAX_VALUE) {
-                        continue; // Can't improve path through unreachable neighbor
+                }
+                return changed;
+            }
+            int middle = (from + to) >>> 1;
+            RoundTask left = new RoundTask(topology, from, middle, refresh);
+            left.fork();
+            boolean right = new RoundTask(topology, middle, to, refresh).compute();
+            return left.join() | right;
+        }
+    }
+    
+    /**
+     * One round of triggered updates. Every router in the worklist sends the
+     * destinations that changed since its last update to all its neighbors.
+     * A neighbor takes a route if it is shorter than its own, and picks a new
+     * route when the router it currently forwards through reports a higher
+     * cost, so that increases propagate as well. Routers changed by this round are queued
+     * for the next one; the algorithm has converged once the worklist is empty
+     * and no destination is held down.
+     */
+    private boolean runTriggeredRound(TopologySnapshot topology) {
+        int n = topology.size();
+        if (triggeredTopology == null || !sameRouters(triggeredTopology, topology)) {
+            startTriggeredUpdates(topology);
+        } else if (triggeredTopology.getEpoch() != topology.getEpoch()) {
+            applyLinkChanges(triggeredTopology, topology);
+        }
+        if (worklistSize == 0 && holdDowns.isEmpty()) {
+            converged = true;
+            return true;
+        }
+        
+        iteration++;
+        releaseHoldDowns(topology);
+        
+        // Routers changed while this round runs go into the next round
+        int roundSize = worklistSize;
+        int[] sending = worklist;
+        worklist = round;
+        round = sending;
+        worklistSize = 0;
+        for (int i = 0; i < roundSize; i++) {
+            queued[sending[i]] = false;
+        }
+        
+        for (int i = 0; i < roundSize; i++) {
+            int id = sending[i];
+            int count = takeChangedDestinations(id, n);
+            if (count == 0) {
+                continue;
+            }
+            Router router = topology.getRouter(id);
+            for (int slot = topology.offset(id), end = topology.offset(id + 1); slot < end; slot++) {
+                int neighborId = topology.target(slot);
+                Router neighbor = topology.getRouter(neighborId);
+                int linkCost = topology.cost(slot);
+                boolean sent = false;
+                for (int k = 0; k < count; k++) {
+                    int destination = destinations[k];
+                    if (destination == neighborId) {
+                        continue;
                     }
-                    
-                    // Calculate new cost: cost to neighbor + neighbor's cost to destination
-                    int newCost = linkCost + neighborCostToDest;
-                    
-                    // Prevent overflow
-                    if (newCost < 0) {
-                        newCost = Integer.MAX_VALUE;
+                    int advertised = router.getCost(destination);
+                    if (loopPrevention != LoopPrevention.NONE && router.getNextHopId(destination) == neighborId) {
+                        if (loopPrevention == LoopPrevention.SPLIT_HORIZON) {
+                            continue;
+                        }
+                        advertised = Router.INFINITY;
                     }
-                    
-                    // Update if this is a better path or if we don't have a path yet
-                    Integer currentCost = currentTable.get(destination);
-                    if (currentCost == null) {
-                        currentCost = Integer.MAX_VALUE;
+                    sent = true;
+                    if (isHeldDown(neighborId, destination)) {
+                        continue;
                     }
-                    
-                    if (newCost < currentCost) {
-                        currentTable.put(destination, newCost);
-                        currentNextHop.put(destination, neighbor.getName());
-                        changed = true;
-                    } else if (currentCost == Integer.MAX_VALUE && newCost < Integer.MAX_VALUE) {
-                        // Found a path where there was none
-                        currentTable.put(destination, newCost);
-                        currentNextHop.put(destination, neighbor.getName());
-                        changed = true;
+                    int newCost = routeCost(linkCost, advertised);
+                    int current = neighbor.getCost(destination);
+                    if (newCost < current) {
+                        neighbor.setRoute(destination, newCost, id);
+                        markChanged(neighborId, destination);
+                    } else if (newCost != current && neighbor.getNextHopId(destination) == id) {
+                        reselectRoute(topology, neighborId, destination, id, newCost);
                     }
                 }
-            }
-            
-            // Apply updates
-            for (Map.Entry<String, Integer> entry : currentTable.entrySet()) {
-                String dest = entry.getKey();
-                int cost = entry.getValue();
-                String nextHop = currentNextHop.get(dest);
-                router.updateRoutingEntry(dest, cost, nextHop);
+                if (sent) {
+                    messages++;
+                }
             }
         }
         
-        converged = !changed;
+        converged = worklistSize == 0 && holdDowns.isEmpty();
         return converged;
     }
     
+    /**
+     * The route of a router through its current next hop got worse. Since
+     * other neighbors only send updates when their own vectors change, the
+     * router falls back on the best route its neighbors currently offer
+     * instead of waiting for one. With loop prevention on, neighbors whose
+     * route goes through this router offer nothing. Losing the route
+     * altogether starts a hold-down.
+     */
+    private void reselectRoute(TopologySnapshot topology, int id, int destination, int hop, int hopCost) {
+        Router router = topology.getRouter(id);
+        int bestCost = hopCost;
+        int bestHop = hop;
+        for (int slot = topology.offset(id), end = topology.offset(id + 1); slot < end; slot++) {
+            int neighborId = topology.target(slot);
+            if (neighborId == hop) {
+                continue;
+            }
+            Router neighbor = topology.getRouter(neighborId);
+            if (loopPrevention != LoopPrevention.NONE && neighbor.getNextHopId(destination) == id) {
+                continue;
+            }
+            int cost = routeCost(topology.cost(slot), neighbor.getCost(destination));
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestHop = neighborId;
+            }
+        }
+        int current = router.getCost(destination);
+        int currentHop = router.getNextHopId(destination);
+        if (bestCost == Router.INFINITY) {
+            bestHop = Router.NO_HOP;
+        }
+        router.setRoute(destination, bestCost, bestHop);
+        if (bestCost != current) {
+            if (bestCost == Router.INFINITY && holdDownRounds > 0) {
+                startHoldDown(id, destination);
+            }
+            markChanged(id, destination);
+        } else if (bestHop != currentHop && loopPrevention != LoopPrevention.NONE) {
+            // Same cost, but the route is now offered to the old next hop and no longer to the new one
+            markChanged(id, destination);
+        }
+    }
+    
+    private boolean isHeldDown(int id, int destination) {
+        return holdUntil != null && holdUntil[id] != null && holdUntil[id][destination] != 0;
+    }
+    
+    private void startHoldDown(int id, int destination) {
+        if (holdUntil[id] == null) {
+            holdUntil[id] = new int[holdUntil.length];
+        }
+        int until = iteration + holdDownRounds;
+        holdUntil[id][destination] = until;
+        holdDowns.add(new int[] {id, destination, until});
+    }
+    
+    /**
+     * End the hold-downs that ran out and let those routers pick a route again
+     */
+    private void releaseHoldDowns(TopologySnapshot topology) {
+        while (!holdDowns.isEmpty() && holdDowns.peek()[2] <= iteration) {
+            int[] hold = holdDowns.poll();
+            int id = hold[0];
+            int destination = hold[1];
+            if (holdUntil[id][destination] == hold[2]) {
+                holdUntil[id][destination] = 0;
+                reselectRoute(topology, id, destination, Router.NO_HOP, Router.INFINITY);
+            }
+        }
+    }
+    
+    /**
+     * Cost of a route over a link to a neighbor, INFINITY if the neighbor has
+     * no route or the cost reaches the infinity metric
+     */
+    private int routeCost(int linkCost, int neighborCost) {
+        if (neighborCost >= infinity) {
+            return Router.INFINITY;
+        }
+        int cost = linkCost + neighborCost;
+        return cost < 0 || cost >= infinity ? Router.INFINITY : cost;
+    }
+    
+    /**
+     * Queue every router to send its whole vector, as after a topology change
+     * the current tables may no longer agree with the links
+     */
+    private void startTriggeredUpdates(TopologySnapshot topology) {
+        int n = topology.size();
+        int words = (n + 63) >>> 6;
+        worklist = new int[n];
+        round = new int[n];
+        queued = new boolean[n];
+        fullUpdate = new boolean[n];
+        changed = new int[n][];
+        changedCount = new int[n];
+        changedMarks = new long[n][words];
+        destinations = new int[n];
+        holdUntil = new int[n][];
+        holdDowns.clear();
+        for (int id = 0; id < n; id++) {
+            worklist[id] = id;
+            queued[id] = true;
+            fullUpdate[id] = true;
+            changed[id] = new int[4];
+        }
+        worklistSize = n;
+        triggeredTopology = topology;
+    }
+    
+    /**
+     * Bring the tables in line with links that were added, removed or changed
+     * cost since the last round. Only the routers at either end of a changed
+     * link are touched: their routes over the changed links are recomputed
+     * and they are queued to send their whole vector, so neighbors learn
+     * about new and cheaper links.
+     */
+    private void applyLinkChanges(TopologySnapshot previous, TopologySnapshot topology) {
+        int n = topology.size();
+        int[] oldLinks = new int[n]; // neighbor id -> previous link cost
+        int[] newLinks = new int[n]; // neighbor id -> current link cost
+        Arrays.fill(oldLinks, Router.INFINITY);
+        Arrays.fill(newLinks, Router.INFINITY);
+        for (int id = 0; id < n; id++) {
+            if (!loadRow(previous, id, oldLinks, topology, newLinks)) {
+                continue;
+            }
+            Router router = topology.getRouter(id);
+            for (int destination = 0; destination < n; destination++) {
+                int hop = router.getNextHopId(destination);
+                if (isHeldDown(id, destination)) {
+                    continue;
+                }
+                if (hop < 0) {
+                    // Routes over removed links may already have been dropped
+                    reselectRoute(topology, id, destination, Router.NO_HOP, Router.INFINITY);
+                    continue;
+                }
+                if (hop == id || oldLinks[hop] == newLinks[hop]) {
+                    continue;
+                }
+                int cost = routeCost(newLinks[hop], topology.getRouter(hop).getCost(destination));
+                if (newLinks[hop] > oldLinks[hop]) {
+                    // Decide from the link change rather than the stored cost,
+                    // which need not include the old link cost
+                    reselectRoute(topology, id, destination, hop, cost);
+                } else if (cost < router.getCost(destination)) {
+                    router.setRoute(destination, cost, hop);
+                }
+            }
+            for (int slot = previous.offset(id), end = previous.offset(id + 1); slot < end; slot++) {
+                oldLinks[previous.target(slot)] = Router.INFINITY;
+            }
+            for (int slot = topology.offset(id), end = topology.offset(id + 1); slot < end; slot++) {
+                newLinks[topology.target(slot)] = Router.INFINITY;
+            }
+            clearChanged(id);
+            fullUpdate[id] = true;
+            if (!queued[id]) {
+                queued[id] = true;
+                worklist[worklistSize++] = id;
+            }
+        }
+        triggeredTopology = topology;
+    }
+    
+    /**
+     * Fill in the previous and current link costs of a router by neighbor id.
+     * Returns true if its links changed; otherwise the arrays are left clear.
+     */
+    private static boolean loadRow(TopologySnapshot previous, int id, int[] oldLinks,
+                                   TopologySnapshot topology, int[] newLinks) {
+        for (int slot = previous.offset(id), end = previous.offset(id + 1); slot < end; slot++) {
+            oldLinks[previous.target(slot)] = previous.cost(slot);
+        }
+        boolean changed = previous.degree(id) != topology.degree(id);
+        for (int slot = topology.offset(id), end = topology.offset(id + 1); slot < end; slot++) {
+            int neighborId = topology.target(slot);
+            newLinks[neighborId] = topology.cost(slot);
+            changed |= oldLinks[neighborId] != newLinks[neighborId];
+        }
+        if (!changed) {
+            for (int slot = previous.offset(id), end = previous.offset(id + 1); slot < end; slot++) {
+                oldLinks[previous.target(slot)] = Router.INFINITY;
+                newLinks[previous.target(slot)] = Router.INFINITY;
+            }
+        }
+        return changed;
+    }
+    
+    private static boolean sameRouters(TopologySnapshot previous, TopologySnapshot topology) {
+        int n = topology.size();
+        if (previous.size() != n) {
+            return false;
+        }
+        for (int id = 0; id < n; id++) {
+            if (previous.getRouter(id) != topology.getRouter(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Record that a router's route to a destination changed and queue the router
+     */
+    private void markChanged(int id, int destination) {
+        if (!fullUpdate[id]) {
+            long[] marks = changedMarks[id];
+            long bit = 1L << destination;
+            if ((marks[destination >>> 6] & bit) == 0) {
+                marks[destination >>> 6] |= bit;
+                int count = changedCount[id];
+                if (count == changed[id].length) {
+                    changed[id] = Arrays.copyOf(changed[id], Math.min(count * 2, changedMarks.length));
+                }
+                changed[id][count] = destination;
+                changedCount[id] = count + 1;
+            }
+        }
+        if (!queued[id]) {
+            queued[id] = true;
+            worklist[worklistSize++] = id;
+        }
+    }
+    
+    /**
+     * Move a router's changed destinations into the destinations buffer and
+     * clear them, returning how many there are
+     */
+    private int takeChangedDestinations(int id, int n) {
+        if (fullUpdate[id]) {
+            fullUpdate[id] = false;
+            for (int d = 0; d < n; d++) {
+                destinations[d] = d;
+            }
+            clearChanged(id);
+            return n;
+        }
+        int count = changedCount[id];
+        System.arraycopy(changed[id], 0, destinations, 0, count);
+        clearChanged(id);
+        return count;
+    }
+    
+    private void clearChanged(int id) {
+        long[] marks = changedMarks[id];
+        int[] list = changed[id];
+        for (int k = 0, count = changedCount[id]; k < count; k++) {
+            marks[list[k] >>> 6] &= ~(1L << list[k]);
+        }
+        changedCount[id] = 0;
+    }
+    
     /**
      * Run algorithm until convergence
      */
     public void runUntilConvergence() {
         converged = false;
         iteration = 0;
+        messages = 0;
         
         // Reset routing tables first
         graph.resetRoutingTables();
+        triggeredTopology = null;
+        parallelTopology = null;
+        
+        reconverge();
+    }
+    
+    /**
+     * Keep the current tables and run until they settle again, as after a
+     * link failure. Rounds and messages are counted from here on.
+     * Returns true if the tables converged within the iteration cap.
+     */
+    public boolean reconverge() {
+        converged = false;
+        startIteration = iteration;
+        startMessages = messages;
         
         // Maximum iterations to prevent infinite loops (in case of negative cycles)
         int maxIterations = graph.getRouters().size() * 10;
         
-        while (!converged && iteration < maxIterations) {
+        while (!converged && iteration - startIteration < maxIterations) {
             runIteration();
         }
+        return converged;
+    }
+    
+    /**
+     * Rounds taken by the last runUntilConvergence or reconverge
+     */
+    public int getRoundsToConvergence() {
+        return iteration - startIteration;
+    }
+    
+    /**
+     * Neighbor updates sent during the last runUntilConvergence or reconverge.
+     * In SWEEP and PARALLEL mode every router hears from every neighbor each
+     * round; in TRIGGERED mode only non-empty updates count.
+     */
+    public long getMessagesToConvergence() {
+        return messages - startMessages;
     }
     
     /**
@@ -0,0 +1,344 @@
+package algorithms;
+
+import models.NetworkGraph;
+import models.Router;
+import models.TopologySnapshot;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Asynchronous Distance Vector routing where every router is an actor.
+ * Routers do not read each other's tables; each one owns a mailbox of
+ * distance vector updates from its neighbors and is scheduled whenever that
+ * mailbox is non-empty. Processing a batch of updates may improve some of
+ * its routes, which it then sends to all its neighbors as a new update.
+ *
+ * Actors run on virtual threads when the runtime provides them and on a
+ * work-stealing pool otherwise. A count of messages sent but not yet
+ * processed detects global quiescence: when it drops to zero no router has
+ * pending work and none can receive any more, so the tables have converged.
+ *
+ * A run works on the topology snapshot taken when it starts. A run that
+ * times out is cancelled: actors stop before their next message or table
+ * write, and the call returns only once none is running any more.
+ */
+public class DistanceVectorActors {
+    private final NetworkGraph graph;
+    private boolean converged;
+    
+    // State of the current run
+    private RouterActor[] actors;
+    private ExecutorService executor;
+    private final AtomicLong inFlight = new AtomicLong(); // messages sent but not yet processed
+    private final AtomicLong messages = new AtomicLong(); // messages sent in total
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private CountDownLatch quiescent;
+    private volatile boolean cancelled; // checked by actors before every message and table write
+    private long startTime;
+    
+    public DistanceVectorActors(NetworkGraph graph) {
+        this.graph = graph;
+    }
+    
+    /**
+     * Reset the routing tables and run the actors until no messages are left
+     */
+    public void runUntilConvergence() {
+        try {
+            runUntilConvergence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Reset the routing tables and run the actors until no messages are left
+     * or the timeout expires. Returns true if the tables converged.
+     */
+    public boolean runUntilConvergence(long timeout, TimeUnit unit) throws InterruptedException {
+        converged = false;
+        graph.resetRoutingTables();
+        TopologySnapshot topology = graph.getSnapshot();
+        int n = topology.size();
+        
+        actors = new RouterActor[n];
+        for (int id = 0; id < n; id++) {
+            actors[id] = new RouterActor(topology, id);
+        }
+        inFlight.set(0);
+        messages.set(0);
+        failure.set(null);
+        quiescent = new CountDownLatch(1);
+        cancelled = false;
+        startTime = System.nanoTime();
+        if (n == 0) {
+            converged = true;
+            return true;
+        }
+        
+        executor = newExecutor();
+        try {
+            // Every router starts by sending its whole vector. Copy them all
+            // before the first message lets an actor change its table.
+            for (RouterActor actor : actors) {
+                actor.copyFullVector();
+            }
+            // Count the initial messages up front so quiescence cannot be seen early
+            inFlight.incrementAndGet();
+            for (RouterActor actor : actors) {
+                actor.sendFullVector();
+            }
+            messageDone(1);
+            
+            boolean finished = quiescent.await(timeout, unit);
+            Throwable error = failure.get();
+            if (error != null) {
+                throw new IllegalStateException("Distance Vector actor failed", error);
+            }
+            converged = finished;
+            return finished;
+        } finally {
+            // Stop actors still running after a timeout or failure, and wait
+            // for them so none writes a table after this call returns
+            cancelled = true;
+            executor.shutdownNow();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Actors notice the cancellation between table writes
+                }
+            } finally {
+                executor = null;
+            }
+        }
+    }
+    
+    public boolean isConverged() {
+        return converged;
+    }
+    
+    /**
+     * Messages exchanged by the last run
+     */
+    public long getMessageCount() {
+        return messages.get();
+    }
+    
+    /**
+     * A router has converged when its mailbox is empty and it is not running.
+     * Until the whole network is quiescent a converged router can still be
+     * woken up by a late update from a neighbor.
+     */
+    public boolean isRouterConverged(Router router) {
+        RouterActor actor = actorOf(router);
+        return actor != null && !actor.scheduled.get() && actor.mailbox.isEmpty();
+    }
+    
+    /**
+     * Nanoseconds from the start of the last run until the router last
+     * changed its routing table, or -1 if it never did
+     */
+    public long getLastChangeTime(Router router) {
+        RouterActor actor = actorOf(router);
+        return actor == null || actor.lastChange == 0 ? -1 : actor.lastChange - startTime;
+    }
+    
+    private RouterActor actorOf(Router router) {
+        int id = router.getId();
+        if (actors == null || id < 0 || id >= actors.length || actors[id].router != router) {
+            return null;
+        }
+        return actors[id];
+    }
+    
+    /**
+     * Account for processed messages and release the waiting caller once none are left
+     */
+    private void messageDone(long count) {
+        if (count > 0 && inFlight.addAndGet(-count) == 0) {
+            quiescent.countDown();
+        }
+    }
+    
+    private void fail(Throwable error) {
+        failure.compareAndSet(null, error);
+        quiescent.countDown();
+    }
+    
+    /**
+     * Executor running one virtual thread per task when available (Java 21
+     * and later), otherwise a FIFO work-stealing pool over all cores
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+    }
+    
+    /**
+     * Routes of one router sent over a single link: destinations and the
+     * sender's costs to them. The arrays are never modified after sending.
+     */
+    private static final class Update {
+        final int sender;
+        final int linkCost;
+        final int[] destinations;
+        final int[] costs;
+        final int count;
+        
+        Update(int sender, int linkCost, int[] destinations, int[] costs, int count) {
+            this.sender = sender;
+            this.linkCost = linkCost;
+            this.destinations = destinations;
+            this.costs = costs;
+            this.count = count;
+        }
+    }
+    
+    private final class RouterActor implements Runnable {
+        final Router router;
+        final int id;
+        final int[] neighbors;
+        final int[] linkCosts;
+        final Queue<Update> mailbox = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile long lastChange; // System.nanoTime of the last table change, 0 if none
+        
+        // Only touched by the thread currently running this actor
+        private int[] changed;
+        private boolean[] isChanged;
+        private int changedCount;
+        
+        // Initial vector, copied before any actor runs
+        private int[] fullDestinations;
+        private int[] fullCosts;
+        private int fullCount;
+        
+        RouterActor(TopologySnapshot topology, int id) {
+            this.router = topology.getRouter(id);
+            this.id = id;
+            int degree = topology.degree(id);
+            this.neighbors = new int[degree];
+            this.linkCosts = new int[degree];
+            for (int i = 0, slot = topology.offset(id); i < degree; i++, slot++) {
+                neighbors[i] = topology.target(slot);
+                linkCosts[i] = topology.cost(slot);
+            }
+        }
+        
+        void deliver(Update update) {
+            inFlight.incrementAndGet();
+            messages.incrementAndGet();
+            mailbox.add(update);
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+        
+        @Override
+        public void run() {
+            try {
+                do {
+                    long processed = drainMailbox();
+                    scheduled.set(false);
+                    messageDone(processed);
+                    // An update may have arrived after the mailbox was found empty
+                } while (!cancelled && !mailbox.isEmpty() && scheduled.compareAndSet(false, true));
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+        
+        /**
+         * Apply every queued update, then send the routes that improved.
+         * Returns the number of updates processed; they are released only
+         * after the resulting updates are sent, so the in-flight count cannot
+         * reach zero too early.
+         */
+        private long drainMailbox() {
+            long processed = 0;
+            Update update;
+            while (!cancelled && (update = mailbox.poll()) != null) {
+                processed++;
+                for (int k = 0; k < update.count; k++) {
+                    int destination = update.destinations[k];
+                    int cost = update.costs[k];
+                    if (destination == id || cost == Router.INFINITY) {
+                        continue;
+                    }
+                    int newCost = update.linkCost + cost;
+                    if (newCost >= 0 && newCost < router.getCost(destination)) {
+                        if (cancelled) {
+                            return processed;
+                        }
+                        router.setRoute(destination, newCost, update.sender);
+                        markChanged(destination);
+                    }
+                }
+            }
+            if (changedCount > 0 && !cancelled) {
+                lastChange = System.nanoTime();
+                sendChanged();
+            }
+            return processed;
+        }
+        
+        private void markChanged(int destination) {
+            if (changed == null) {
+                int n = actors.length;
+                changed = new int[n];
+                isChanged = new boolean[n];
+            }
+            if (!isChanged[destination]) {
+                isChanged[destination] = true;
+                changed[changedCount++] = destination;
+            }
+        }
+        
+        private void sendChanged() {
+            int count = changedCount;
+            int[] destinations = Arrays.copyOf(changed, count);
+            int[] costs = new int[count];
+            for (int k = 0; k < count; k++) {
+                costs[k] = router.getCost(destinations[k]);
+                isChanged[destinations[k]] = false;
+            }
+            changedCount = 0;
+            send(destinations, costs, count);
+        }
+        
+        void copyFullVector() {
+            int n = actors.length;
+            fullDestinations = new int[n];
+            fullCosts = new int[n];
+            fullCount = 0;
+            for (int d = 0; d < n; d++) {
+                int cost = router.getCost(d);
+                if (cost != Router.INFINITY) {
+                    fullDestinations[fullCount] = d;
+                    fullCosts[fullCount] = cost;
+                    fullCount++;
+                }
+            }
+        }
+        
+        void sendFullVector() {
+            send(fullDestinations, fullCosts, fullCount);
+            fullDestinations = null;
+            fullCosts = null;
+        }
+        
+        private void send(int[] destinations, int[] costs, int count) {
+            for (int i = 0; i < neighbors.length; i++) {
+                actors[neighbors[i]].deliver(new Update(id, linkCosts[i], destinations, costs, count));
+            }
+        }
+    }
+}
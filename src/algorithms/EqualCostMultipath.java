@@ -0,0 +1,165 @@
+package algorithms;
+
+import models.Router;
+import models.TopologySnapshot;
+import java.util.Arrays;
+
+/**
+ * Computes the equal-cost next hop sets stored in Router tables.
+ * A neighbor v of router s is an equal-cost next hop towards d when the link
+ * to v followed by a shortest path from v costs exactly as much as the
+ * shortest path from s to d.
+ *
+ * Only neighbors strictly closer to d than s qualify, so that forwarding over
+ * any of the hops cannot loop. With positive link costs that excludes no
+ * equal-cost hop; a neighbor behind a zero-cost link may route back through
+ * s, so it is only kept when it is the next hop already in the table.
+ */
+final class EqualCostMultipath {
+    private EqualCostMultipath() {
+    }
+    
+    /**
+     * Derive the sets of a source from the shortest path run in scratch.
+     * Every neighbor of the source gets a bit; the bits of a router are the
+     * union of those of its predecessors on all shortest paths, gathered in
+     * the order routers were settled.
+     */
+    static void fromShortestPaths(TopologySnapshot topology, int sourceId, SpfScratch scratch) {
+        int n = topology.size();
+        int[] distances = scratch.distances;
+        int base = topology.offset(sourceId);
+        int degree = topology.degree(sourceId);
+        int words = Math.max(1, (degree + 63) >>> 6);
+        long[] masks = scratch.hopMasks(n * words);
+        
+        for (int i = 0; i < degree; i++) {
+            int v = topology.target(base + i);
+            if (v != sourceId && topology.cost(base + i) > 0 && distances[v] == topology.cost(base + i)) {
+                masks[v * words + (i >>> 6)] |= 1L << i;
+            }
+        }
+        // Over zero-cost links a predecessor can be settled after the router
+        // it leads to, so repeat until nothing changes in that case
+        boolean changed = propagate(topology, sourceId, scratch, masks, words);
+        while (changed && topology.getMinCost() == 0) {
+            changed = propagate(topology, sourceId, scratch, masks, words);
+        }
+        
+        int[] offsets = new int[n + 1];
+        int[] hops = new int[Math.max(n, 16)];
+        int count = 0;
+        for (int d = 0; d < n; d++) {
+            offsets[d] = count;
+            if (distances[d] == Integer.MAX_VALUE) {
+                continue;
+            }
+            if (hops.length < count + degree + 1) {
+                hops = Arrays.copyOf(hops, Math.max(hops.length * 2, count + degree + 1));
+            }
+            int start = count;
+            if (d == sourceId) {
+                hops[count++] = sourceId;
+            } else {
+                for (int w = 0; w < words; w++) {
+                    long bits = masks[d * words + w];
+                    while (bits != 0) {
+                        int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        hops[count++] = topology.target(base + i);
+                        bits &= bits - 1;
+                    }
+                }
+                count = addHop(hops, start, count, scratch.firstHops[d]);
+            }
+            Arrays.sort(hops, start, count);
+        }
+        offsets[n] = count;
+        topology.getRouter(sourceId).setEqualCostHops(offsets, Arrays.copyOf(hops, count));
+    }
+    
+    private static boolean propagate(TopologySnapshot topology, int sourceId, SpfScratch scratch,
+                                     long[] masks, int words) {
+        int[] distances = scratch.distances;
+        boolean changed = false;
+        for (int k = 0; k < scratch.settledCount; k++) {
+            int u = scratch.order[k];
+            if (u == sourceId) {
+                continue;
+            }
+            int distance = distances[u];
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
+                if (v == sourceId || distance + topology.cost(slot) != distances[v]) {
+                    continue;
+                }
+                for (int w = 0; w < words; w++) {
+                    long merged = masks[v * words + w] | masks[u * words + w];
+                    if (merged != masks[v * words + w]) {
+                        masks[v * words + w] = merged;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Derive the sets of a router from its neighbors' converged tables, the
+     * way a Distance Vector router does from the vectors it received
+     */
+    static void fromNeighborTables(TopologySnapshot topology, int id, int infinity) {
+        int n = topology.size();
+        Router router = topology.getRouter(id);
+        int first = topology.offset(id);
+        int end = topology.offset(id + 1);
+        int degree = end - first;
+        
+        int[] offsets = new int[n + 1];
+        int[] hops = new int[Math.max(n, 16)];
+        int count = 0;
+        for (int d = 0; d < n; d++) {
+            offsets[d] = count;
+            int cost = router.getCost(d);
+            if (cost >= infinity) {
+                continue;
+            }
+            if (hops.length < count + degree + 1) {
+                hops = Arrays.copyOf(hops, Math.max(hops.length * 2, count + degree + 1));
+            }
+            if (d == id) {
+                hops[count++] = id;
+                continue;
+            }
+            for (int slot = first; slot < end; slot++) {
+                int neighborId = topology.target(slot);
+                int neighborCost = topology.getRouter(neighborId).getCost(d);
+                if (neighborCost < cost && (long) topology.cost(slot) + neighborCost == cost) {
+                    hops[count++] = neighborId;
+                }
+            }
+            int start = offsets[d];
+            count = addHop(hops, start, count, router.getNextHopId(d));
+            Arrays.sort(hops, start, count);
+        }
+        offsets[n] = count;
+        router.setEqualCostHops(offsets, Arrays.copyOf(hops, count));
+    }
+    
+    /**
+     * Append the table's next hop to the set from start to count unless it is
+     * already there; returns the new count
+     */
+    private static int addHop(int[] hops, int start, int count, int hop) {
+        if (hop == Router.NO_HOP) {
+            return count;
+        }
+        for (int k = start; k < count; k++) {
+            if (hops[k] == hop) {
+                return count;
+            }
+        }
+        hops[count] = hop;
+        return count + 1;
+    }
+}
@@ -0,0 +1,155 @@
+package algorithms;
+
+import models.Router;
+import models.TopologySnapshot;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * All-pairs shortest paths with a cache-blocked Floyd-Warshall over flat
+ * n x n cost and next hop matrices. For dense topologies this beats running
+ * Dijkstra from every router, since the inner loop is a plain scan over two
+ * matrix rows with no queue at all.
+ *
+ * The matrices are split into BLOCK x BLOCK tiles. For every diagonal tile
+ * the tile itself is relaxed first, then the tiles in its row and column,
+ * then all others; the tiles within each of the last two steps are
+ * independent, so they run in parallel.
+ *
+ * Ties between equal-cost paths go to the lowest first hop, as in LinkState,
+ * so with positive link costs the routing tables come out the same whichever
+ * engine computed them.
+ */
+final class FloydWarshall {
+    /** Tile edge; a tile of each matrix fits in the L1 cache */
+    static final int BLOCK = 64;
+    /** Distance of unconnected pairs; twice this still fits in an int, so sums cannot overflow */
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+    /** Next hop of a router to itself while running, so ties never pick it */
+    private static final int SELF = Integer.MAX_VALUE;
+    
+    private FloydWarshall() {
+    }
+    
+    /**
+     * Whether the topology suits this engine: no negative costs, no path cost
+     * that could reach UNREACHABLE, and matrices taking at most a quarter of
+     * the heap
+     */
+    static boolean canRun(TopologySnapshot topology) {
+        int n = topology.size();
+        long padded = paddedSize(n);
+        long bytes = padded * padded * 8;
+        return n > 0
+                && topology.getMinCost() >= 0
+                && (long) Math.max(topology.getMaxCost(), 0) * (n - 1) < UNREACHABLE
+                && bytes <= Runtime.getRuntime().maxMemory() / 4;
+    }
+    
+    /**
+     * Compute every router's routing table
+     */
+    static void computeRoutes(TopologySnapshot topology, boolean parallel) {
+        int n = topology.size();
+        int size = paddedSize(n);
+        int[] distances = new int[size * size];
+        int[] nextHops = new int[size * size];
+        Arrays.fill(distances, UNREACHABLE);
+        Arrays.fill(nextHops, Router.NO_HOP);
+        for (int i = 0; i < n; i++) {
+            distances[i * size + i] = 0;
+            nextHops[i * size + i] = SELF;
+            for (int slot = topology.offset(i), end = topology.offset(i + 1); slot < end; slot++) {
+                int j = topology.target(slot);
+                distances[i * size + j] = topology.cost(slot);
+                nextHops[i * size + j] = j;
+            }
+        }
+        
+        int blocks = size / BLOCK;
+        for (int k = 0; k < blocks; k++) {
+            final int kb = k;
+            relaxTile(distances, nextHops, size, kb, kb, kb);
+            
+            // Tiles in the row and column of the diagonal tile
+            range(2 * blocks, parallel).forEach(t -> {
+                int other = t >> 1;
+                if (other == kb) {
+                    return;
+                }
+                if ((t & 1) == 0) {
+                    relaxTile(distances, nextHops, size, kb, other, kb);
+                } else {
+                    relaxTile(distances, nextHops, size, other, kb, kb);
+                }
+            });
+            
+            // All remaining tiles only read the row and column just finished
+            range(blocks * blocks, parallel).forEach(t -> {
+                int bi = t / blocks;
+                int bj = t % blocks;
+                if (bi != kb && bj != kb) {
+                    relaxTile(distances, nextHops, size, bi, bj, kb);
+                }
+            });
+        }
+        
+        // Each router only writes its own table
+        range(n, parallel).forEach(i -> {
+            Router router = topology.getRouter(i);
+            int row = i * size;
+            for (int j = 0; j < n; j++) {
+                if (i == j) {
+                    router.setRoute(j, 0, i);
+                } else if (distances[row + j] >= UNREACHABLE) {
+                    router.setRoute(j, Router.INFINITY, Router.NO_HOP);
+                } else {
+                    router.setRoute(j, distances[row + j], nextHops[row + j]);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Relax tile (bi, bj) through the intermediate routers of tile column bk
+     */
+    private static void relaxTile(int[] distances, int[] nextHops, int size, int bi, int bj, int bk) {
+        int i0 = bi * BLOCK;
+        int j0 = bj * BLOCK;
+        int k0 = bk * BLOCK;
+        for (int k = k0; k < k0 + BLOCK; k++) {
+            int rowK = k * size;
+            for (int i = i0; i < i0 + BLOCK; i++) {
+                if (i == k) {
+                    continue; // Paths back through the source add nothing
+                }
+                int rowI = i * size;
+                int toK = distances[rowI + k];
+                if (toK >= UNREACHABLE) {
+                    continue;
+                }
+                int hop = nextHops[rowI + k];
+                for (int j = j0; j < j0 + BLOCK; j++) {
+                    int cost = toK + distances[rowK + j];
+                    int current = distances[rowI + j];
+                    if (cost < current) {
+                        distances[rowI + j] = cost;
+                        nextHops[rowI + j] = hop;
+                    } else if (cost == current && hop < nextHops[rowI + j]) {
+                        // Equal-cost path: prefer the lowest first hop
+                        nextHops[rowI + j] = hop;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static IntStream range(int count, boolean parallel) {
+        IntStream range = IntStream.range(0, count);
+        return parallel ? range.parallel() : range;
+    }
+    
+    private static int paddedSize(int n) {
+        return (n + BLOCK - 1) / BLOCK * BLOCK;
+    }
+}
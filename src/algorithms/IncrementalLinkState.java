@@ -0,0 +1,541 @@
+package algorithms;
+
+import models.Link;
+import models.NetworkGraph;
+import models.Router;
+import models.TopologyListener;
+import models.TopologySnapshot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Link State routing that keeps every router's shortest path tree between
+ * runs and repairs it when links change, instead of rerunning SPF from scratch.
+ *
+ * The engine listens to its graph and queues link changes. On update():
+ * - a link whose cost went up or that was removed only matters to sources
+ *   whose tree uses it; the subtree below it is cut off and re-attached from
+ *   its boundary with a Dijkstra run limited to the cut-off routers,
+ * - a link whose cost went down or that was added is relaxed, and any
+ *   improvement is propagated outwards with Dijkstra,
+ * so the work is proportional to the routers whose routes actually change.
+ * Adding or removing routers changes the id space and rebuilds all trees.
+ *
+ * update() only writes the engine's own trees, so it can run on a worker
+ * thread. The routes it changed are written to the routers' tables by
+ * publish(), on the thread that owns the graph, while the graph still has
+ * the topology the trees were computed for. The listener callbacks only
+ * append to the queue under its own lock, so graph edits never wait for an
+ * update in progress; each update takes the changes up to its snapshot.
+ *
+ * Trees take two n x n int matrices, in addition to the routing tables.
+ */
+public class IncrementalLinkState implements TopologyListener {
+    private final NetworkGraph graph;
+    private int[][] distances; // source id -> distance to every router
+    private int[][] parents; // source id -> predecessor of every router in the source's tree
+    private boolean treesValid;
+    private volatile TopologySnapshot treeTopology; // topology the trees were computed for
+    private volatile boolean tablesPublished; // routing tables hold the trees as of the last publish
+    
+    // Routes changed since the last publish, as source id << 32 | router id;
+    // publishAll stands for every route, after a rebuild or too many changes
+    private long[] changedRoutes = new long[16];
+    private int changedCount;
+    private boolean publishAll;
+    
+    // Changes reported by the graph and not yet applied to the trees, tagged
+    // with the first topology epoch that contains them. Guarded by pendingLock.
+    private final Object pendingLock = new Object();
+    private final ArrayDeque<PendingChange> pendingChanges = new ArrayDeque<>();
+    private long rebuildEpoch = -1; // latest epoch whose changes can only be applied by a rebuild
+    private boolean invalidated;
+    
+    // Repair working storage, reused between updates. Marks hold the stamp of
+    // the source being repaired, so they never need clearing.
+    private int mark;
+    private int[] cutMarks = new int[0]; // cut off from the tree
+    private int[] hopMarks = new int[0]; // first hop resolved into hops[]
+    private int[] hops = new int[0];
+    private int[] affected = new int[0]; // cut-off routers
+    private int[] repairedOrder = new int[0]; // recomputed routers in settle order
+    private int[] stack = new int[0];
+    
+    // Statistics of the last update
+    private int repairedSources;
+    private int repairedRouters;
+    
+    /** Queued link changes beyond which the next update simply rebuilds */
+    static final int MAX_PENDING_CHANGES = 1 << 16;
+    
+    public IncrementalLinkState(NetworkGraph graph) {
+        this.graph = graph;
+        this.treesValid = false;
+        this.tablesPublished = false;
+        graph.addTopologyListener(this);
+    }
+    
+    /**
+     * Stop listening to the graph
+     */
+    public synchronized void dispose() {
+        graph.removeTopologyListener(this);
+        treesValid = false;
+        distances = null;
+        parents = null;
+    }
+    
+    /**
+     * The routing tables were overwritten (reset, or written by another
+     * algorithm); the next publish writes every route
+     */
+    public void tablesChanged() {
+        tablesPublished = false;
+    }
+    
+    /**
+     * Forget all trees; the next update recomputes them from scratch
+     */
+    public void invalidate() {
+        synchronized (pendingLock) {
+            invalidated = true;
+            pendingChanges.clear();
+        }
+    }
+    
+    /**
+     * Bring every router's routing table up to date with the current
+     * topology. Call on the thread that owns the graph.
+     */
+    public void update() {
+        update(graph.getSnapshot());
+        publish();
+    }
+    
+    /**
+     * Bring the trees up to date with a snapshot of the graph, without
+     * touching any routing table; safe to call from a worker thread
+     */
+    public synchronized void update(TopologySnapshot topology) {
+        int n = topology.size();
+        long epoch = topology.getEpoch();
+        
+        // Take the changes this snapshot contains; later ones stay queued
+        boolean rebuildNeeded;
+        Map<Long, int[]> changes = new LinkedHashMap<>(); // link key -> {u, v, cost before, cost now}
+        synchronized (pendingLock) {
+            TopologySnapshot previous = treeTopology;
+            rebuildNeeded = invalidated || previous == null || rebuildEpoch > previous.getEpoch();
+            invalidated = false;
+            while (!pendingChanges.isEmpty() && pendingChanges.peekFirst().epoch <= epoch) {
+                PendingChange change = pendingChanges.pollFirst();
+                // Coalesce repeated changes of one link, keeping the cost the trees were built with
+                int[] coalesced = changes.get(Link.key(change.u, change.v));
+                if (coalesced == null) {
+                    changes.put(Link.key(change.u, change.v),
+                        new int[] {change.u, change.v, change.oldCost, change.newCost});
+                } else {
+                    coalesced[3] = change.newCost;
+                }
+            }
+        }
+        
+        if (rebuildNeeded || !treesValid || distances == null || distances.length != n) {
+            rebuild(topology);
+        } else if (!changes.isEmpty()) {
+            repair(topology, changes.values());
+        } else {
+            repairedSources = 0;
+            repairedRouters = 0;
+        }
+        treeTopology = topology;
+    }
+    
+    /**
+     * Epoch of the topology the trees were last updated for, or -1 before
+     * the first update. publish() is only valid while the graph is at it.
+     */
+    public long getEpoch() {
+        TopologySnapshot topology = treeTopology;
+        return topology == null ? -1 : topology.getEpoch();
+    }
+    
+    /**
+     * Write the routes changed by the updates since the last publish, or all
+     * of them if the tables were overwritten, to the routers' tables. Call
+     * on the thread that owns the graph.
+     */
+    public synchronized void publish() {
+        TopologySnapshot topology = treeTopology;
+        if (topology == null || !treesValid) {
+            return;
+        }
+        ensureWorkspace(topology.size());
+        if (publishAll || !tablesPublished) {
+            publishAll(topology);
+        } else {
+            int source = -1;
+            for (int i = 0; i < changedCount; i++) {
+                int s = (int) (changedRoutes[i] >>> 32);
+                if (s != source) {
+                    nextMark(); // First hops resolved for one source do not hold for another
+                    source = s;
+                }
+                writeRoute(topology, s, (int) changedRoutes[i]);
+            }
+        }
+        changedCount = 0;
+        publishAll = false;
+        tablesPublished = true;
+    }
+    
+    /**
+     * Number of sources whose tree changed in the last update
+     */
+    public synchronized int getRepairedSources() {
+        return repairedSources;
+    }
+    
+    /**
+     * Number of (source, destination) routes recomputed in the last update
+     */
+    public synchronized int getRepairedRouters() {
+        return repairedRouters;
+    }
+    
+    @Override
+    public void topologyChanged(NetworkGraph graph) {
+        // Changes are recorded individually through linkChanged and routersChanged
+    }
+    
+    @Override
+    public void linkChanged(NetworkGraph graph, Link link, int oldCost, int newCost) {
+        // The graph notifies before bumping its epoch, so the change first shows in the next one
+        long epoch = graph.getTopologyEpoch() + 1;
+        int u = link.getSource().getId();
+        int v = link.getDestination().getId();
+        synchronized (pendingLock) {
+            if (u < 0 || v < 0 || pendingChanges.size() >= MAX_PENDING_CHANGES) {
+                // Too many to repair, or ids about to change: every update
+                // rebuilds until the trees reach this epoch
+                pendingChanges.clear();
+                rebuildEpoch = epoch;
+            } else {
+                pendingChanges.addLast(new PendingChange(epoch, u, v, oldCost, newCost));
+            }
+        }
+    }
+    
+    @Override
+    public void routersChanged(NetworkGraph graph) {
+        long epoch = graph.getTopologyEpoch() + 1;
+        synchronized (pendingLock) {
+            // Ids may change, so every update rebuilds until the trees reach
+            // this epoch; queued link changes are not needed for that
+            pendingChanges.clear();
+            rebuildEpoch = epoch;
+        }
+    }
+    
+    /**
+     * Compute every source's tree from scratch
+     */
+    private void rebuild(TopologySnapshot topology) {
+        int n = topology.size();
+        if (distances == null || distances.length != n) {
+            distances = new int[n][];
+            parents = new int[n][];
+        }
+        IntStream sources = IntStream.range(0, n);
+        if (n >= LinkState.PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+            sources = sources.parallel(); // Each source writes only its own rows
+        }
+        sources.forEach(s -> {
+            SpfScratch scratch = SpfScratch.get();
+            LinkState.shortestPaths(topology, s, scratch);
+            if (distances[s] == null || distances[s].length != n) {
+                distances[s] = new int[n];
+                parents[s] = new int[n];
+            }
+            System.arraycopy(scratch.distances, 0, distances[s], 0, n);
+            System.arraycopy(scratch.previous, 0, parents[s], 0, n);
+        });
+        treesValid = true;
+        publishAll = true;
+        changedCount = 0;
+        repairedSources = n;
+        repairedRouters = n * n;
+    }
+    
+    /**
+     * Apply the pending link changes to every source's tree
+     */
+    private void repair(TopologySnapshot topology, Collection<int[]> pending) {
+        int n = topology.size();
+        ensureWorkspace(n);
+        List<int[]> changes = new ArrayList<>();
+        for (int[] change : pending) {
+            if (change[2] != change[3]) {
+                changes.add(change);
+            }
+        }
+        
+        repairedSources = 0;
+        repairedRouters = 0;
+        for (int s = 0; s < n; s++) {
+            int repaired = repairSource(topology, s, changes);
+            if (repaired > 0) {
+                repairedSources++;
+                repairedRouters += repaired;
+            }
+        }
+    }
+    
+    /**
+     * Repair one source's tree; returns the number of routers whose route was recomputed
+     */
+    private int repairSource(TopologySnapshot topology, int s, List<int[]> changes) {
+        int[] dist = distances[s];
+        int[] parent = parents[s];
+        nextMark();
+        
+        // Cut off the subtrees hanging below tree links that got more expensive or disappeared
+        int affectedCount = 0;
+        for (int[] change : changes) {
+            if (change[3] > change[2]) {
+                int u = change[0];
+                int v = change[1];
+                if (parent[v] == u) {
+                    affectedCount = collectSubtree(topology, parent, v, affectedCount);
+                } else if (parent[u] == v) {
+                    affectedCount = collectSubtree(topology, parent, u, affectedCount);
+                }
+            }
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            int x = affected[i];
+            dist[x] = Router.INFINITY;
+            parent[x] = Router.NO_HOP;
+        }
+        
+        // Re-attach each cut-off router to its best neighbor outside the cut
+        IndexedHeap queue = SpfScratch.get().heap(topology.size());
+        for (int i = 0; i < affectedCount; i++) {
+            int x = affected[i];
+            for (int slot = topology.offset(x), end = topology.offset(x + 1); slot < end; slot++) {
+                int y = topology.target(slot);
+                if (cutMarks[y] != mark && dist[y] != Router.INFINITY && dist[y] + topology.cost(slot) < dist[x]) {
+                    dist[x] = dist[y] + topology.cost(slot);
+                    parent[x] = y;
+                }
+            }
+            if (dist[x] != Router.INFINITY) {
+                queue.insertOrDecrease(x, dist[x]);
+            }
+        }
+        
+        // Links that got cheaper or appeared may shorten routes anywhere
+        for (int[] change : changes) {
+            if (change[3] < change[2]) {
+                relax(change[0], change[1], change[3], dist, parent, queue);
+                relax(change[1], change[0], change[3], dist, parent, queue);
+            }
+        }
+        
+        // Dijkstra from the seeds; routers leave the queue with their final distance
+        int repaired = 0;
+        while (!queue.isEmpty()) {
+            int x = queue.pollMin();
+            repairedOrder[repaired++] = x;
+            int currentDist = dist[x];
+            for (int slot = topology.offset(x), end = topology.offset(x + 1); slot < end; slot++) {
+                int y = topology.target(slot);
+                int newDist = currentDist + topology.cost(slot);
+                if (newDist < dist[y]) {
+                    dist[y] = newDist;
+                    parent[y] = x;
+                    queue.insertOrDecrease(y, newDist);
+                }
+            }
+        }
+        
+        for (int i = 0; i < repaired; i++) {
+            routeChanged(topology, s, repairedOrder[i]);
+        }
+        // Cut-off routers that could not be re-attached are now unreachable
+        for (int i = 0; i < affectedCount; i++) {
+            if (dist[affected[i]] == Router.INFINITY) {
+                routeChanged(topology, s, affected[i]);
+            }
+        }
+        // Router.addNeighbor/removeNeighbor also write the direct entries of
+        // changed links into the tables, so those are rewritten as well
+        for (int[] change : changes) {
+            int other = change[0] == s ? change[1] : change[1] == s ? change[0] : -1;
+            if (other >= 0) {
+                routeChanged(topology, s, other);
+            }
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            if (dist[affected[i]] == Router.INFINITY) {
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+    
+    /**
+     * First hop from s to a reachable router x, through its tree parents.
+     * Hops resolved since the last nextMark() are reused.
+     */
+    private int firstHop(int s, int[] parent, int x) {
+        int top = 0;
+        int hop;
+        while (true) {
+            if (hopMarks[x] == mark) {
+                hop = hops[x];
+                break;
+            }
+            if (parent[x] == s) {
+                hop = x;
+                break;
+            }
+            stack[top++] = x;
+            x = parent[x];
+        }
+        hops[x] = hop;
+        hopMarks[x] = mark;
+        while (top > 0) {
+            int y = stack[--top];
+            hops[y] = hop;
+            hopMarks[y] = mark;
+        }
+        return hop;
+    }
+    
+    /**
+     * Remember that the route from s to x has to be written on the next publish
+     */
+    private void routeChanged(TopologySnapshot topology, int s, int x) {
+        if (publishAll) {
+            return;
+        }
+        if (changedCount == changedRoutes.length) {
+            if (changedCount >= topology.size() * 16L) {
+                // Rewriting every table is cheaper than tracking this many routes
+                publishAll = true;
+                changedCount = 0;
+                return;
+            }
+            changedRoutes = Arrays.copyOf(changedRoutes, changedCount * 2);
+        }
+        changedRoutes[changedCount++] = (long) s << 32 | x;
+    }
+    
+    private void writeRoute(TopologySnapshot topology, int s, int x) {
+        Router source = topology.getRouter(s);
+        int[] dist = distances[s];
+        if (x == s) {
+            source.setRoute(s, 0, s);
+        } else if (dist[x] == Router.INFINITY) {
+            source.setRoute(x, Router.INFINITY, Router.NO_HOP);
+        } else {
+            source.setRoute(x, dist[x], firstHop(s, parents[s], x));
+        }
+    }
+    
+    /**
+     * Start a new stamp for the marks; on wrap-around clear them instead
+     */
+    private void nextMark() {
+        if (++mark == 0) {
+            Arrays.fill(cutMarks, 0);
+            Arrays.fill(hopMarks, 0);
+            mark = 1;
+        }
+    }
+    
+    /**
+     * Mark and collect root and every router below it in a shortest path tree
+     */
+    private int collectSubtree(TopologySnapshot topology, int[] parent, int root, int affectedCount) {
+        if (cutMarks[root] == mark) {
+            return affectedCount;
+        }
+        cutMarks[root] = mark;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int x = stack[--top];
+            affected[affectedCount++] = x;
+            // Children are the neighbors whose predecessor is x
+            for (int slot = topology.offset(x), end = topology.offset(x + 1); slot < end; slot++) {
+                int y = topology.target(slot);
+                if (parent[y] == x && cutMarks[y] != mark) {
+                    cutMarks[y] = mark;
+                    stack[top++] = y;
+                }
+            }
+        }
+        return affectedCount;
+    }
+    
+    private static void relax(int from, int to, int cost, int[] dist, int[] parent, IndexedHeap queue) {
+        if (dist[from] != Router.INFINITY && dist[from] + cost < dist[to]) {
+            dist[to] = dist[from] + cost;
+            parent[to] = from;
+            queue.insertOrDecrease(to, dist[to]);
+        }
+    }
+    
+    private void ensureWorkspace(int n) {
+        if (cutMarks.length < n) {
+            cutMarks = new int[n];
+            hopMarks = new int[n];
+            hops = new int[n];
+            affected = new int[n];
+            repairedOrder = new int[n];
+            stack = new int[n];
+            mark = 0;
+        }
+    }
+    
+    /**
+     * Write every route of every tree to the routers' tables
+     */
+    private void publishAll(TopologySnapshot topology) {
+        int n = topology.size();
+        for (int s = 0; s < n; s++) {
+            nextMark();
+            for (int x = 0; x < n; x++) {
+                writeRoute(topology, s, x);
+            }
+        }
+    }
+    
+    /**
+     * A link change as reported by the graph
+     */
+    private static final class PendingChange {
+        final long epoch;
+        final int u;
+        final int v;
+        final int oldCost;
+        final int newCost;
+        
+        PendingChange(long epoch, int u, int v, int oldCost, int newCost) {
+            this.epoch = epoch;
+            this.u = u;
+            this.v = v;
+            this.oldCost = oldCost;
+            this.newCost = newCost;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min-heap over router ids with decrease-key.
+ * The position of every queued id is tracked, so a router is queued at most
+ * once and updating its key sifts it in place instead of adding a duplicate
+ * entry. All storage is int arrays sized once for the number of routers.
+ */
+class IndexedHeap {
+    private static final int ARITY = 4;
+    private static final int ABSENT = -1;
+    
+    private final int[] heap; // heap slot -> router id
+    private final int[] positions; // router id -> heap slot, ABSENT if not queued
+    private final int[] keys;
+    private int size;
+    
+    IndexedHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.keys = new int[capacity];
+        Arrays.fill(positions, ABSENT);
+        this.size = 0;
+    }
+    
+    int capacity() {
+        return heap.length;
+    }
+    
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    boolean contains(int id) {
+        return positions[id] != ABSENT;
+    }
+    
+    /**
+     * Insert a router, or lower its key if it is already queued
+     */
+    void insertOrDecrease(int id, int key) {
+        int slot = positions[id];
+        if (slot == ABSENT) {
+            slot = size++;
+            heap[slot] = id;
+            positions[id] = slot;
+        }
+        keys[id] = key;
+        siftUp(slot);
+    }
+    
+    /**
+     * Insert a router, or move it to a new key in either direction
+     */
+    void insertOrUpdate(int id, int key) {
+        int slot = positions[id];
+        if (slot == ABSENT || key <= keys[id]) {
+            insertOrDecrease(id, key);
+            return;
+        }
+        keys[id] = key;
+        siftDown(slot);
+    }
+    
+    /**
+     * Key of the router pollMin would return
+     */
+    int minKey() {
+        return keys[heap[0]];
+    }
+    
+    /**
+     * Remove and return the router with the smallest key
+     */
+    int pollMin() {
+        int min = heap[0];
+        positions[min] = ABSENT;
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+    
+    /**
+     * Drop every queued router
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = ABSENT;
+        }
+        size = 0;
+    }
+    
+    private void siftUp(int slot) {
+        int id = heap[slot];
+        int key = keys[id];
+        while (slot > 0) {
+            int parentSlot = (slot - 1) / ARITY;
+            int parent = heap[parentSlot];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[slot] = parent;
+            positions[parent] = slot;
+            slot = parentSlot;
+        }
+        heap[slot] = id;
+        positions[id] = slot;
+    }
+    
+    private void siftDown(int slot) {
+        int id = heap[slot];
+        int key = keys[id];
+        while (true) {
+            int firstChild = slot * ARITY + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            // Smallest of up to ARITY children
+            int best = firstChild;
+            int bestKey = keys[heap[firstChild]];
+            int lastChild = Math.min(firstChild + ARITY, size);
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                int childKey = keys[heap[child]];
+                if (childKey < bestKey) {
+                    best = child;
+                    bestKey = childKey;
+                }
+            }
+            if (bestKey >= key) {
+                break;
+            }
+            int child = heap[best];
+            heap[slot] = child;
+            positions[child] = slot;
+            slot = best;
+        }
+        heap[slot] = id;
+        positions[id] = slot;
+    }
+}
@@ -0,0 +1,294 @@
+package algorithms;
+
+import models.NetworkGraph;
+import models.Router;
+import models.TopologySnapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The k cheapest loopless paths between two routers, for planning backup
+ * routes, computed with Yen's algorithm.
+ *
+ * Each path found is followed router by router; at every router along it a
+ * spur path to the destination is searched that avoids the routers before
+ * it and the links already taken there by earlier paths with the same
+ * start. The cheapest of all candidates found so far becomes the next path.
+ *
+ * Two things keep this fast on large topologies. A single shortest path
+ * tree towards the destination gives every router's exact cost to the
+ * destination in the full graph, a lower bound on any spur path from it:
+ * spur searches are A* searches guided by that bound, so they follow the
+ * tree closely, and a spur whose bound cannot beat the candidates already
+ * collected is not searched at all. Only as many candidates are kept as
+ * paths are still missing.
+ *
+ * Link costs must not be negative.
+ */
+public class KShortestPaths {
+    private final NetworkGraph graph;
+    
+    // Shortest path tree towards the last destination, kept while the topology stays the same
+    private int[] toDestination = new int[0]; // router id -> cost to the destination
+    private int treeDestination = -1;
+    private long treeEpoch = -1;
+    
+    // Spur search state
+    private final RouteQuery.Search search = new RouteQuery.Search();
+    private int[] blocked = new int[0]; // router id -> stamp of the spur search that excludes it
+    private int blockStamp;
+    private int[] blockedHops = new int[16]; // links out of the spur router taken by earlier paths
+    
+    private int[] pathCosts = new int[0];
+    
+    public KShortestPaths(NetworkGraph graph) {
+        this.graph = graph;
+    }
+    
+    /**
+     * Up to k loopless paths from source to destination, cheapest first,
+     * each including both ends. Fewer are returned when fewer exist.
+     */
+    public List<List<Router>> getShortestPaths(Router source, Router destination, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+        List<List<Router>> result = new ArrayList<>();
+        pathCosts = new int[0];
+        TopologySnapshot topology = graph.getSnapshot();
+        int sourceId = idOf(topology, source);
+        int destinationId = idOf(topology, destination);
+        if (sourceId < 0 || destinationId < 0) {
+            return result;
+        }
+        if (topology.getMinCost() < 0) {
+            throw new IllegalStateException("k shortest paths need non-negative link costs");
+        }
+        
+        prepareTree(topology, destinationId);
+        if (toDestination[sourceId] == Integer.MAX_VALUE) {
+            return result;
+        }
+        int n = topology.size();
+        search.prepare(n);
+        if (blocked.length < n) {
+            blocked = new int[n];
+            blockStamp = 0;
+        }
+        
+        List<Candidate> paths = new ArrayList<>();
+        blockRoot(new int[0], 0);
+        paths.add(spurPath(topology, sourceId, destinationId, new int[] {sourceId}, 0, Long.MAX_VALUE, 0));
+        TreeSet<Candidate> candidates = new TreeSet<>();
+        while (paths.size() < k) {
+            Candidate last = paths.get(paths.size() - 1);
+            int wanted = k - paths.size();
+            long rootCost = 0;
+            for (int i = 0; i + 1 < last.routers.length; i++) {
+                int spur = last.routers[i];
+                // No spur from here can beat the worst candidate still needed
+                long bound = candidates.size() >= wanted ? candidates.last().cost : Long.MAX_VALUE;
+                if (rootCost + toDestination[spur] >= bound) {
+                    rootCost += linkCost(topology, spur, last.routers[i + 1]);
+                    continue;
+                }
+                
+                blockRoot(last.routers, i);
+                int blockedCount = 0;
+                for (Candidate path : paths) {
+                    if (path.routers.length > i + 1 && sharesRoot(path.routers, last.routers, i)) {
+                        if (blockedCount == blockedHops.length) {
+                            blockedHops = Arrays.copyOf(blockedHops, blockedCount * 2);
+                        }
+                        blockedHops[blockedCount++] = path.routers[i + 1];
+                    }
+                }
+                Candidate candidate = spurPath(topology, spur, destinationId,
+                        Arrays.copyOf(last.routers, i + 1), rootCost, bound, blockedCount);
+                if (candidate != null && candidates.add(candidate) && candidates.size() > wanted) {
+                    candidates.pollLast();
+                }
+                rootCost += linkCost(topology, spur, last.routers[i + 1]);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            paths.add(candidates.pollFirst());
+        }
+        
+        pathCosts = new int[paths.size()];
+        for (int p = 0; p < paths.size(); p++) {
+            Candidate path = paths.get(p);
+            List<Router> routers = new ArrayList<>(path.routers.length);
+            for (int id : path.routers) {
+                routers.add(topology.getRouter(id));
+            }
+            result.add(routers);
+            pathCosts[p] = (int) path.cost;
+        }
+        return result;
+    }
+    
+    /**
+     * Costs of the paths returned by the last getShortestPaths call, in the
+     * same order
+     */
+    public int[] getPathCosts() {
+        return pathCosts.clone();
+    }
+    
+    /**
+     * Cost of every router to the destination, from one SPF run on the
+     * calling thread's scratch storage
+     */
+    private void prepareTree(TopologySnapshot topology, int destinationId) {
+        if (treeDestination == destinationId && treeEpoch == topology.getEpoch()) {
+            return;
+        }
+        int n = topology.size();
+        SpfScratch scratch = SpfScratch.get();
+        LinkState.shortestPaths(topology, destinationId, scratch);
+        if (toDestination.length < n) {
+            toDestination = new int[n];
+        }
+        // Links are symmetric, so costs from the destination are costs to it
+        System.arraycopy(scratch.distances, 0, toDestination, 0, n);
+        treeDestination = destinationId;
+        treeEpoch = topology.getEpoch();
+    }
+    
+    /**
+     * A* from the spur router to the destination, avoiding blocked routers
+     * and the first blockedCount blocked hops out of the spur router.
+     * Returns the root followed by the spur path, or null if no path avoids
+     * them for less than the bound.
+     */
+    private Candidate spurPath(TopologySnapshot topology, int spur, int destinationId, int[] root,
+                               long rootCost, long bound, int blockedCount) {
+        search.start(spur, keyOf(0, spur));
+        while (!search.heap.isEmpty()) {
+            if (rootCost + search.heap.minKey() >= bound) {
+                return null; // Everything left costs too much to be kept
+            }
+            int u = search.heap.pollMin();
+            int distance = search.distances[u];
+            if (u == destinationId) {
+                return candidate(root, spur, destinationId, rootCost + distance);
+            }
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
+                if (blocked[v] == blockStamp || toDestination[v] == Integer.MAX_VALUE
+                        || (u == spur && isBlockedHop(v, blockedCount))) {
+                    continue;
+                }
+                int newDistance = distance + topology.cost(slot);
+                if (newDistance < search.distance(v)) {
+                    search.reach(v, newDistance, u);
+                    search.heap.insertOrDecrease(v, keyOf(newDistance, v));
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Exclude the routers of the path before its i-th router from the next spur search
+     */
+    private void blockRoot(int[] routers, int i) {
+        if (++blockStamp == 0) {
+            // Stamp wrapped around, so old marks could look current
+            Arrays.fill(blocked, 0);
+            blockStamp = 1;
+        }
+        for (int j = 0; j < i; j++) {
+            blocked[routers[j]] = blockStamp;
+        }
+    }
+    
+    private boolean isBlockedHop(int v, int blockedCount) {
+        for (int i = 0; i < blockedCount; i++) {
+            if (blockedHops[i] == v) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * A* key: cost so far plus the exact cost to the destination in the full
+     * graph, which never overestimates with routers or links removed
+     */
+    private int keyOf(int distance, int id) {
+        long key = (long) distance + toDestination[id];
+        return key >= Integer.MAX_VALUE ? Integer.MAX_VALUE - 1 : (int) key;
+    }
+    
+    private Candidate candidate(int[] root, int spur, int destinationId, long cost) {
+        int length = 0;
+        for (int id = destinationId; id != spur; id = search.previous[id]) {
+            length++;
+        }
+        int[] routers = Arrays.copyOf(root, root.length + length);
+        int index = routers.length - 1;
+        for (int id = destinationId; id != spur; id = search.previous[id]) {
+            routers[index--] = id;
+        }
+        return new Candidate(routers, cost);
+    }
+    
+    private static boolean sharesRoot(int[] a, int[] b, int i) {
+        for (int j = 0; j <= i; j++) {
+            if (a[j] != b[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int linkCost(TopologySnapshot topology, int from, int to) {
+        for (int slot = topology.offset(from), end = topology.offset(from + 1); slot < end; slot++) {
+            if (topology.target(slot) == to) {
+                return topology.cost(slot);
+            }
+        }
+        throw new IllegalStateException("No link from " + from + " to " + to);
+    }
+    
+    private static int idOf(TopologySnapshot topology, Router router) {
+        if (router == null) {
+            return -1;
+        }
+        int id = router.getId();
+        return id >= 0 && id < topology.size() && topology.getRouter(id) == router ? id : -1;
+    }
+    
+    /**
+     * A loopless path and its cost, ordered by cost and then router by
+     * router so that equal paths compare equal
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final int[] routers;
+        final long cost;
+        
+        Candidate(int[] routers, long cost) {
+            this.routers = routers;
+            this.cost = cost;
+        }
+        
+        @Override
+        public int compareTo(Candidate other) {
+            if (cost != other.cost) {
+                return cost < other.cost ? -1 : 1;
+            }
+            int length = Math.min(routers.length, other.routers.length);
+            for (int i = 0; i < length; i++) {
+                if (routers[i] != other.routers[i]) {
+                    return Integer.compare(routers[i], other.routers[i]);
+                }
+            }
+            return Integer.compare(routers.length, other.routers.length);
+        }
+    }
+}
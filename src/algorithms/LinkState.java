@@ -2,20 +2,110 @@ package algorithms;
 
 import models.NetworkGraph;
 import models.Router;
+import models.TopologySnapshot;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Implements Link State Routing Algorithm (Dijkstra's Algorithm).
  * Each router constructs the full topology and computes shortest paths.
+ *
+ * When every link cost is a small non-negative integer, Dial's algorithm
+ * with a bucket queue is used instead of a binary heap, which makes each
+ * run close to linear in the number of links.
+ *
+ * Distances, predecessors and the queues live in per-thread scratch storage
+ * that is reused between runs, so runForAllRouters does not churn the heap.
+ * On large topologies runForAllRouters spreads the sources over all cores;
+ * each source only writes its own router's table, so workers never share
+ * mutable state.
+ *
+ * The first hop of every route is carried forward during relaxation, with
+ * ties between equal-cost paths going to the lowest first-hop id, so next
+ * hops need no trace-back. The shortest path tree (predecessors) of each
+ * source is kept until the topology changes, for getShortestPath.
+ * With equal-cost multipath on, every router also gets the full set of
+ * equal-cost next hops of each destination.
+ *
+ * On dense topologies runForAllRouters uses a blocked Floyd-Warshall instead
+ * of one Dijkstra run per router; the tables come out the same, but no
+ * shortest path trees are kept, so getShortestPath follows next hops.
+ * Over zero-cost links the two may pick different equal-cost next hops, so
+ * AUTO only chooses Floyd-Warshall when every link cost is positive.
+ *
+ * A single run on a very large topology can use parallel delta-stepping
+ * instead of Dijkstra. It needs positive link costs and gives the same
+ * distances and first hops.
  */
 public class LinkState {
+    public enum AllPairsMethod {
+        /** Floyd-Warshall for dense topologies that fit in memory, Dijkstra otherwise */
+        AUTO,
+        DIJKSTRA,
+        /** Floyd-Warshall whenever the topology allows it */
+        FLOYD_WARSHALL
+    }
+    
+    public enum SingleSourceMethod {
+        /** Delta-stepping for very large topologies on multicore machines, Dijkstra otherwise */
+        AUTO,
+        DIJKSTRA,
+        /** Delta-stepping whenever all link costs are positive */
+        DELTA_STEPPING
+    }
+    
+    /** Largest link cost for which the bucket queue is selected */
+    static final int BUCKET_COST_LIMIT = 1024;
+    /** Smallest topology for which runForAllRouters runs sources in parallel */
+    static final int PARALLEL_THRESHOLD = 256;
+    /** Share of all router pairs that must be linked for AUTO to pick Floyd-Warshall */
+    static final double FLOYD_WARSHALL_DENSITY = 0.3;
+    /** Smallest number of directed link slots for which AUTO runs a single source with delta-stepping */
+    static final int DELTA_STEPPING_EDGES = 1 << 21;
+    
     private NetworkGraph graph;
     private Router sourceRouter;
+    private int[][] trees; // source id -> predecessor of every router, null if not computed
+    private long treesEpoch; // topology epoch the trees were computed for
+    private boolean equalCostMultipath;
+    private AllPairsMethod allPairsMethod = AllPairsMethod.AUTO;
+    private SingleSourceMethod singleSourceMethod = SingleSourceMethod.AUTO;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
     
     public LinkState(NetworkGraph graph) {
         this.graph = graph;
     }
     
+    /**
+     * Also store the equal-cost next hops of every destination in the
+     * routers' tables, for Router.selectNextHop
+     */
+    public void setEqualCostMultipath(boolean enabled) {
+        this.equalCostMultipath = enabled;
+    }
+    
+    /**
+     * Choose how runForAllRouters computes all routing tables
+     */
+    public void setAllPairsMethod(AllPairsMethod method) {
+        this.allPairsMethod = method;
+    }
+    
+    /**
+     * Choose how run computes the routing table of a single source
+     */
+    public void setSingleSourceMethod(SingleSourceMethod method) {
+        this.singleSourceMethod = method;
+    }
+    
+    /**
+     * Use this pool for delta-stepping instead of the common pool
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    
     /**
      * Run Link State algorithm from a source router
      * Uses Dijkstra's algorithm to compute shortest paths
@@ -27,168 +117,275 @@ public class LinkState {
             return;
         }
         
-        // Reset routing table for source router
-        source.resetRoutingTable();
-        
-        // Priority queue for Dijkstra's algorithm: (cost, router)
-        PriorityQueue<DijkstraNode> queue = new PriorityQueue<>(
-            Comparator.comparingInt(DijkstraNode::getCost)
-        );
+        TopologySnapshot topology = graph.getSnapshot();
+        int sourceId = source.getId();
+        if (sourceId < 0 || sourceId >= topology.size() || topology.getRouter(sourceId) != source) {
+            return; // Source is not part of this graph
+        }
+        prepareTrees(topology);
+        computeRoutes(topology, sourceId, useDeltaStepping(topology));
+    }
+    
+    private boolean useDeltaStepping(TopologySnapshot topology) {
+        if (singleSourceMethod == SingleSourceMethod.DIJKSTRA || !DeltaStepping.canRun(topology)) {
+            return false;
+        }
+        return singleSourceMethod == SingleSourceMethod.DELTA_STEPPING
+                || (pool.getParallelism() > 1 && topology.edgeCount() >= DELTA_STEPPING_EDGES);
+    }
+    
+    /**
+     * Compute the routing table of one source router; safe to call from
+     * several threads at once for different sources
+     */
+    private void computeRoutes(TopologySnapshot topology, int sourceId, boolean deltaStepping) {
+        Router source = topology.getRouter(sourceId);
         
-        // Distance from source to each router
-        Map<Router, Integer> distances = new HashMap<>();
-        Map<Router, Router> previous = new HashMap<>();
-        Set<Router> visited = new HashSet<>();
+        // Distance from source to each router, indexed by router id
+        int n = topology.size();
+        SpfScratch scratch = SpfScratch.get();
+        if (deltaStepping) {
+            DeltaStepping.shortestPaths(topology, sourceId, scratch, pool, equalCostMultipath);
+        } else {
+            shortestPaths(topology, sourceId, scratch);
+        }
+        int[] distances = scratch.distances;
+        int[] firstHops = scratch.firstHops;
         
-        // Initialize distances: source has distance 0
-        for (Router router : graph.getRouters()) {
-            if (router.equals(source)) {
-                distances.put(router, 0);
+        // Update routing table for source router - include ALL routers
+        for (int id = 0; id < n; id++) {
+            if (distances[id] != Integer.MAX_VALUE) {
+                source.setRoute(id, distances[id], firstHops[id]);
             } else {
-                distances.put(router, Integer.MAX_VALUE);
+                // Unreachable destination - set to infinity
+                source.setRoute(id, Router.INFINITY, Router.NO_HOP);
             }
         }
+        if (equalCostMultipath) {
+            EqualCostMultipath.fromShortestPaths(topology, sourceId, scratch);
+        }
         
-        queue.add(new DijkstraNode(source, 0));
+        // Keep the tree for path extraction; each source owns its own row
+        int[] tree = trees[sourceId];
+        if (tree == null || tree.length != n) {
+            tree = new int[n];
+            trees[sourceId] = tree;
+        }
+        System.arraycopy(scratch.previous, 0, tree, 0, n);
+    }
+    
+    /**
+     * Drop the stored trees if they belong to an older topology
+     */
+    private void prepareTrees(TopologySnapshot topology) {
+        if (trees == null || trees.length != topology.size() || treesEpoch != topology.getEpoch()) {
+            trees = new int[topology.size()][];
+            treesEpoch = topology.getEpoch();
+        }
+    }
+    
+    /**
+     * Fill scratch.distances, scratch.previous and scratch.firstHops with the
+     * shortest path tree of a source, picking the queue that suits the
+     * topology's link costs
+     */
+    static void shortestPaths(TopologySnapshot topology, int sourceId, SpfScratch scratch) {
+        scratch.reset(topology.size());
+        if (topology.getMinCost() >= 0 && topology.getMaxCost() <= BUCKET_COST_LIMIT) {
+            bucketShortestPaths(topology, sourceId, scratch);
+        } else {
+            heapShortestPaths(topology, sourceId, scratch);
+        }
+    }
+    
+    /**
+     * Dijkstra's algorithm with an indexed heap and decrease-key; works for any costs
+     */
+    private static void heapShortestPaths(TopologySnapshot topology, int sourceId, SpfScratch scratch) {
+        int[] distances = scratch.distances;
+        int[] previous = scratch.previous;
+        int[] firstHops = scratch.firstHops;
+        IndexedHeap queue = scratch.heap(topology.size());
+        
+        // Initialize distances: source has distance 0
+        distances[sourceId] = 0;
+        firstHops[sourceId] = sourceId;
+        queue.insertOrDecrease(sourceId, 0);
         
         // Dijkstra's algorithm
         while (!queue.isEmpty()) {
-            DijkstraNode current = queue.poll();
-            Router currentRouter = current.getRouter();
-            
-            if (visited.contains(currentRouter)) {
-                continue;
-            }
-            
-            visited.add(currentRouter);
-            int currentDist = distances.get(currentRouter);
+            int u = queue.pollMin();
+            scratch.settle(u);
+            int currentDist = distances[u];
             
             // Explore neighbors
-            for (Map.Entry<Router, Integer> neighborEntry : currentRouter.getNeighbors().entrySet()) {
-                Router neighbor = neighborEntry.getKey();
-                int linkCost = neighborEntry.getValue();
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
                 
-                if (visited.contains(neighbor)) {
+                if (scratch.isSettled(v)) {
                     continue;
                 }
                 
-                int newDist = currentDist + linkCost;
-                Integer oldDist = distances.get(neighbor);
+                int newDist = currentDist + topology.cost(slot);
+                int hop = u == sourceId ? v : firstHops[u];
                 
-                if (oldDist == null || newDist < oldDist) {
-                    distances.put(neighbor, newDist);
-                    previous.put(neighbor, currentRouter);
-                    queue.add(new DijkstraNode(neighbor, newDist));
+                if (newDist < distances[v]) {
+                    distances[v] = newDist;
+                    previous[v] = u;
+                    firstHops[v] = hop;
+                    queue.insertOrDecrease(v, newDist);
+                } else if (newDist == distances[v] && hop < firstHops[v]) {
+                    // Equal-cost path: prefer the lowest first hop
+                    previous[v] = u;
+                    firstHops[v] = hop;
                 }
             }
         }
+    }
+    
+    /**
+     * Dial's algorithm: Dijkstra with a bucket per distance value.
+     * Requires every link cost to lie in [0, BUCKET_COST_LIMIT].
+     */
+    private static void bucketShortestPaths(TopologySnapshot topology, int sourceId, SpfScratch scratch) {
+        int[] distances = scratch.distances;
+        int[] previous = scratch.previous;
+        int[] firstHops = scratch.firstHops;
+        BucketQueue queue = scratch.buckets(topology.size(), topology.getMaxCost());
+        distances[sourceId] = 0;
+        firstHops[sourceId] = sourceId;
+        queue.insertOrDecrease(sourceId, 0);
         
-        // Update routing table for source router - include ALL routers
-        for (Router router : graph.getRouters()) {
-            if (router.equals(source)) {
-                source.updateRoutingEntry(source.getName(), 0, source.getName());
-                continue;
-            }
+        while (!queue.isEmpty()) {
+            // Routers leave the queue in distance order and never re-enter it
+            int u = queue.pollMin();
+            scratch.settle(u);
+            int currentDist = distances[u];
             
-            Integer dist = distances.get(router);
-            if (dist != null && dist != Integer.MAX_VALUE) {
-                // Find next hop to reach this destination
-                Router dest = router;
-                Router nextHop = dest;
-                
-                // Trace back to find first hop
-                while (previous.get(dest) != null && !previous.get(dest).equals(source)) {
-                    dest = previous.get(dest);
-                    nextHop = dest;
-                }
-                
-                if (previous.get(router) != null) {
-                    nextHop = previous.get(router);
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
+                if (scratch.isSettled(v)) {
+                    continue;
                 }
+                int newDist = currentDist + topology.cost(slot);
+                int hop = u == sourceId ? v : firstHops[u];
                 
-                source.updateRoutingEntry(router.getName(), dist, nextHop.getName());
-            } else {
-                // Unreachable destination - set to infinity
-                source.updateRoutingEntry(router.getName(), Integer.MAX_VALUE, "-");
-            }
-        }
-        
-        // Ensure all routers are in the table
-        for (Router router : graph.getRouters()) {
-            String routerName = router.getName();
-            if (!source.getRoutingTable().containsKey(routerName)) {
-                if (routerName.equals(source.getName())) {
-                    source.updateRoutingEntry(routerName, 0, routerName);
-                } else {
-                    source.updateRoutingEntry(routerName, Integer.MAX_VALUE, "-");
+                if (newDist < distances[v]) {
+                    distances[v] = newDist;
+                    previous[v] = u;
+                    firstHops[v] = hop;
+                    queue.insertOrDecrease(v, newDist);
+                } else if (newDist == distances[v] && hop < firstHops[v]) {
+                    // Equal-cost path: prefer the lowest first hop
+                    previous[v] = u;
+                    firstHops[v] = hop;
                 }
             }
         }
-        
-        // For Link State, all routers would compute their own shortest paths
-        // In a full implementation, we'd run this for each router
-        // For now, we'll compute it for the source router
     }
     
     /**
      * Run Link State for all routers (each computes its own shortest paths)
      */
     public void runForAllRouters() {
-        for (Router router : graph.getRouters()) {
-            run(router);
-        }
+        runForAllRouters(Runtime.getRuntime().availableProcessors() > 1);
     }
     
     /**
-     * Get shortest path from source to destination
+     * Run Link State for all routers, optionally spreading the sources over
+     * the common fork-join pool. Results are identical either way.
      */
-    public List<Router> getShortestPath(Router destination) {
-        if (sourceRouter == null) {
-            return new ArrayList<>();
+    public void runForAllRouters(boolean parallel) {
+        TopologySnapshot topology = graph.getSnapshot();
+        int n = topology.size();
+        if (n == 0) {
+            return;
         }
+        prepareTrees(topology);
         
-        List<Router> path = new ArrayList<>();
-        Router current = destination;
-        
-        // Build path backwards
-        while (current != null) {
-            path.add(0, current);
-            
-            String nextHopName = sourceRouter.getNextHop(current.getName());
-            if (nextHopName == null || nextHopName.equals(sourceRouter.getName())) {
-                break;
+        if (useFloydWarshall(topology)) {
+            FloydWarshall.computeRoutes(topology, parallel && n >= PARALLEL_THRESHOLD);
+            if (equalCostMultipath) {
+                for (int id = 0; id < n; id++) {
+                    EqualCostMultipath.fromNeighborTables(topology, id, Router.INFINITY);
+                }
             }
-            
-            Router nextHop = graph.getRouterByName(nextHopName);
-            if (nextHop == null || nextHop.equals(current)) {
-                break;
+        } else if (parallel && n >= PARALLEL_THRESHOLD) {
+            // Every worker uses its own thread's scratch and writes only the source's row
+            IntStream.range(0, n).parallel().forEach(id -> computeRoutes(topology, id, false));
+        } else {
+            for (int id = 0; id < n; id++) {
+                computeRoutes(topology, id, false);
             }
-            
-            current = nextHop;
         }
-        
-        return path;
+        sourceRouter = topology.getRouter(n - 1);
+    }
+    
+    private boolean useFloydWarshall(TopologySnapshot topology) {
+        if (allPairsMethod == AllPairsMethod.DIJKSTRA || !FloydWarshall.canRun(topology)) {
+            return false;
+        }
+        if (allPairsMethod == AllPairsMethod.FLOYD_WARSHALL) {
+            return true;
+        }
+        long n = topology.size();
+        return topology.getMinCost() > 0
+                && topology.edgeCount() >= FLOYD_WARSHALL_DENSITY * n * (n - 1);
     }
     
     /**
-     * Helper class for Dijkstra's priority queue
+     * Get shortest path from the last source to destination
      */
-    private static class DijkstraNode {
-        private Router router;
-        private int cost;
+    public List<Router> getShortestPath(Router destination) {
+        return getShortestPath(sourceRouter, destination);
+    }
+    
+    /**
+     * Get shortest path from source to destination, both included.
+     * Uses the stored shortest path tree when the source's SPF ran on the
+     * current topology; otherwise follows next hops router by router.
+     * Returns an empty list if the destination is unreachable.
+     * RouteQuery finds a single path without running SPF first.
+     */
+    public List<Router> getShortestPath(Router source, Router destination) {
+        List<Router> path = new ArrayList<>();
+        if (source == null || destination == null) {
+            return path;
+        }
         
-        public DijkstraNode(Router router, int cost) {
-            this.router = router;
-            this.cost = cost;
+        TopologySnapshot topology = graph.getSnapshot();
+        int sourceId = source.getId();
+        int destinationId = destination.getId();
+        if (sourceId < 0 || sourceId >= topology.size() || topology.getRouter(sourceId) != source ||
+            destinationId < 0 || destinationId >= topology.size() || topology.getRouter(destinationId) != destination) {
+            return path;
         }
         
-        public Router getRouter() {
-            return router;
+        int[] tree = trees != null && treesEpoch == topology.getEpoch() ? trees[sourceId] : null;
+        if (tree != null) {
+            // Walk the tree back from the destination
+            for (int id = destinationId; id != sourceId; id = tree[id]) {
+                if (id < 0) {
+                    return new ArrayList<>(); // Unreachable
+                }
+                path.add(topology.getRouter(id));
+            }
+            path.add(source);
+            Collections.reverse(path);
+            return path;
         }
         
-        public int getCost() {
-            return cost;
+        // Forward along each router's own next hop, as packets would travel
+        int current = sourceId;
+        path.add(source);
+        while (current != destinationId) {
+            int hop = topology.getRouter(current).getNextHopId(destinationId);
+            if (hop == Router.NO_HOP || path.size() > topology.size()) {
+                return new ArrayList<>(); // Unreachable, or tables not converged
+            }
+            current = hop;
+            path.add(topology.getRouter(current));
         }
+        return path;
     }
 }
-
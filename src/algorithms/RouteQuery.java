@@ -0,0 +1,396 @@
+package algorithms;
+
+import models.NetworkGraph;
+import models.Router;
+import models.TopologySnapshot;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point-to-point route queries that do not need a full shortest path run.
+ * The default search runs Dijkstra from the source and from the destination
+ * at the same time, always growing the smaller frontier, and stops as soon as
+ * no path through the unexplored part can beat the best one joining the two
+ * searches. Typically only a small ball around each end gets settled.
+ *
+ * A* searches from the source only, ordering routers by their distance plus
+ * an estimate of the rest: the straight-line canvas distance to the
+ * destination times the smallest cost per pixel of any link. That estimate
+ * never exceeds the real cost, so the result is exact; the more link costs
+ * follow canvas distances, the fewer routers it settles.
+ *
+ * For many queries on a topology that stays the same, a contraction
+ * hierarchy is built once; each query then only searches upwards from both
+ * ends, settling a few dozen routers. The hierarchy is rebuilt on the first
+ * query after the topology epoch changes, or up front by prepareHierarchy.
+ *
+ * Queries work on the current topology snapshot and leave routing tables
+ * alone. Search state is reused between queries, so an instance must not be
+ * shared between threads.
+ */
+public class RouteQuery {
+    public enum Method {
+        /** Dijkstra from both ends, stopping when the frontiers meet */
+        BIDIRECTIONAL,
+        /** A* from the source, guided by canvas distance to the destination */
+        A_STAR,
+        /** Upward searches over a contraction hierarchy of the topology */
+        CONTRACTION_HIERARCHY
+    }
+    
+    /** Bound on path costs for A*, so a cost plus an estimate cannot overflow */
+    private static final int LIMIT = Integer.MAX_VALUE / 2;
+    
+    private final NetworkGraph graph;
+    private Method method = Method.BIDIRECTIONAL;
+    private final Search forward = new Search();
+    private final Search backward = new Search();
+    
+    // Canvas positions and cost per pixel for A*, cached per topology and layout
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private double costPerPixel;
+    private long heuristicEpoch = -1;
+    private long heuristicLayout = -1;
+    
+    private ContractionHierarchy hierarchy; // null until a hierarchy query, rebuilt per topology epoch
+    
+    // Result of the last query
+    private int meeting; // router joining the forward and backward halves, -1 if unreachable
+    private int cost;
+    private int settledCount;
+    private boolean overHierarchy; // search trees hold hierarchy links, not real ones
+    
+    public RouteQuery(NetworkGraph graph) {
+        this.graph = graph;
+    }
+    
+    public void setMethod(Method method) {
+        this.method = method;
+    }
+    
+    public Method getMethod() {
+        return method;
+    }
+    
+    /**
+     * Cost of the shortest path from source to destination, or
+     * Router.INFINITY if there is none
+     */
+    public int getCost(Router source, Router destination) {
+        TopologySnapshot topology = graph.getSnapshot();
+        if (!query(topology, source, destination)) {
+            return Router.INFINITY;
+        }
+        return cost;
+    }
+    
+    /**
+     * First router after the source on a shortest path to destination, or
+     * null if it is unreachable or the source itself
+     */
+    public Router getNextHop(Router source, Router destination) {
+        TopologySnapshot topology = graph.getSnapshot();
+        if (!hierarchyReady(topology)) {
+            List<Router> path = getShortestPath(source, destination);
+            return path.size() < 2 ? null : path.get(1);
+        }
+        if (!query(topology, source, destination)) {
+            return null;
+        }
+        
+        // Only the first hierarchy link out of the source needs unpacking
+        int sourceId = source.getId();
+        int next = backward.previous[meeting];
+        for (int id = meeting; id != sourceId; id = forward.previous[id]) {
+            next = id;
+        }
+        return next == -1 ? null : topology.getRouter(hierarchy.firstHop(sourceId, next));
+    }
+    
+    /**
+     * Shortest path from source to destination, both included.
+     * Returns an empty list if the destination is unreachable.
+     */
+    public List<Router> getShortestPath(Router source, Router destination) {
+        List<Router> path = new ArrayList<>();
+        TopologySnapshot topology = graph.getSnapshot();
+        if (!query(topology, source, destination)) {
+            return path;
+        }
+        
+        // Source half, walked back from the meeting router
+        for (int id = meeting; id != -1; id = forward.previous[id]) {
+            path.add(topology.getRouter(id));
+        }
+        Collections.reverse(path);
+        // Destination half, which the backward search stored pointing forward
+        if (meeting != destination.getId()) {
+            for (int id = backward.previous[meeting]; id != -1; id = backward.previous[id]) {
+                path.add(topology.getRouter(id));
+            }
+        }
+        if (!overHierarchy) {
+            return path;
+        }
+        
+        List<Router> unpacked = new ArrayList<>();
+        unpacked.add(source);
+        for (int i = 0; i + 1 < path.size(); i++) {
+            hierarchy.unpack(path.get(i).getId(), path.get(i + 1).getId(), topology, unpacked);
+        }
+        return unpacked;
+    }
+    
+    /**
+     * Routers settled by the last query, a measure of the work it took
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+    
+    /**
+     * With CONTRACTION_HIERARCHY selected, build the hierarchy for the
+     * current topology now rather than on the next query, unless it is up
+     * to date already
+     */
+    public void prepareHierarchy() {
+        hierarchyReady(graph.getSnapshot());
+    }
+    
+    /**
+     * Whether hierarchy queries apply to the topology, building the
+     * hierarchy if it was never built or belongs to an older epoch
+     */
+    private boolean hierarchyReady(TopologySnapshot topology) {
+        if (method != Method.CONTRACTION_HIERARCHY || !ContractionHierarchy.canBuild(topology)) {
+            return false;
+        }
+        if (hierarchy == null || hierarchy.getEpoch() != topology.getEpoch()) {
+            hierarchy = null; // Drop the old index before building the next one
+            hierarchy = ContractionHierarchy.build(topology);
+        }
+        return true;
+    }
+    
+    /**
+     * Run the configured search; returns false if the routers are not in the
+     * graph or no path connects them
+     */
+    private boolean query(TopologySnapshot topology, Router source, Router destination) {
+        meeting = -1;
+        cost = Router.INFINITY;
+        settledCount = 0;
+        overHierarchy = false;
+        int sourceId = idOf(topology, source);
+        int destinationId = idOf(topology, destination);
+        if (sourceId < 0 || destinationId < 0) {
+            return false;
+        }
+        
+        int n = topology.size();
+        forward.prepare(n);
+        backward.prepare(n);
+        if (hierarchyReady(topology)) {
+            meeting = hierarchy.query(sourceId, destinationId, forward, backward);
+            settledCount = forward.settled + backward.settled;
+            if (meeting >= 0) {
+                cost = forward.distances[meeting] + backward.distances[meeting];
+            }
+            overHierarchy = true;
+        } else if (topology.getMinCost() < 0) {
+            // Settled routers are only final without negative costs
+            fullSearch(topology, sourceId, destinationId);
+        } else if (method == Method.A_STAR && (long) topology.getMaxCost() * (n - 1) < LIMIT) {
+            aStar(topology, sourceId, destinationId);
+        } else {
+            bidirectional(topology, sourceId, destinationId);
+        }
+        return meeting >= 0;
+    }
+    
+    private void bidirectional(TopologySnapshot topology, int sourceId, int destinationId) {
+        forward.start(sourceId, 0);
+        backward.start(destinationId, 0);
+        int best = Router.INFINITY;
+        if (sourceId == destinationId) {
+            best = 0;
+            meeting = sourceId;
+        }
+        
+        // Any path not found yet costs at least the sum of the two smallest
+        // keys, since it must leave both settled balls
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()
+                && (long) forward.heap.minKey() + backward.heap.minKey() < best) {
+            Search side = forward.heap.size() <= backward.heap.size() ? forward : backward;
+            Search other = side == forward ? backward : forward;
+            int u = side.heap.pollMin();
+            settledCount++;
+            int distance = side.distances[u];
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
+                int newDistance = distance + topology.cost(slot);
+                int current = side.distance(v);
+                if (newDistance < current) {
+                    side.reach(v, newDistance, u);
+                    side.heap.insertOrDecrease(v, newDistance);
+                    current = newDistance;
+                }
+                int remaining = other.distance(v);
+                if (remaining != Router.INFINITY && (long) current + remaining < best) {
+                    best = current + remaining;
+                    meeting = v;
+                }
+            }
+        }
+        cost = best;
+    }
+    
+    private void aStar(TopologySnapshot topology, int sourceId, int destinationId) {
+        prepareHeuristic(topology);
+        int targetX = xs[destinationId];
+        int targetY = ys[destinationId];
+        forward.start(sourceId, estimate(sourceId, targetX, targetY));
+        
+        // The estimate is consistent, so a router's distance is final once it
+        // is polled, just as in Dijkstra
+        while (!forward.heap.isEmpty()) {
+            int u = forward.heap.pollMin();
+            settledCount++;
+            int distance = forward.distances[u];
+            if (u == destinationId) {
+                meeting = u;
+                cost = distance;
+                return;
+            }
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
+                int newDistance = distance + topology.cost(slot);
+                if (newDistance < forward.distance(v)) {
+                    forward.reach(v, newDistance, u);
+                    forward.heap.insertOrDecrease(v, newDistance + estimate(v, targetX, targetY));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Full single-source run for topologies the early-stopping searches
+     * cannot handle; the path found is copied into the forward search
+     */
+    private void fullSearch(TopologySnapshot topology, int sourceId, int destinationId) {
+        SpfScratch scratch = SpfScratch.get();
+        LinkState.shortestPaths(topology, sourceId, scratch);
+        settledCount = scratch.settledCount;
+        if (scratch.distances[destinationId] == Integer.MAX_VALUE) {
+            return;
+        }
+        forward.start(sourceId, 0);
+        for (int id = destinationId; id != sourceId; id = scratch.previous[id]) {
+            forward.reach(id, scratch.distances[id], scratch.previous[id]);
+        }
+        meeting = destinationId;
+        cost = scratch.distances[destinationId];
+    }
+    
+    /**
+     * Lower bound on the cost from a router to the target position. A link
+     * costs at least costPerPixel times its length, so by the triangle
+     * inequality no path can cost less than that times the straight line.
+     */
+    private int estimate(int id, int targetX, int targetY) {
+        double estimate = costPerPixel * Math.hypot(xs[id] - targetX, ys[id] - targetY);
+        return estimate >= LIMIT ? LIMIT : (int) estimate;
+    }
+    
+    private void prepareHeuristic(TopologySnapshot topology) {
+        int n = topology.size();
+        if (heuristicEpoch == topology.getEpoch() && heuristicLayout == graph.getLayoutEpoch() && xs.length >= n) {
+            return;
+        }
+        if (xs.length < n) {
+            xs = new int[n];
+            ys = new int[n];
+        }
+        for (int id = 0; id < n; id++) {
+            Point position = topology.getRouter(id).getPosition();
+            xs[id] = position.x;
+            ys[id] = position.y;
+        }
+        
+        double scale = Double.POSITIVE_INFINITY;
+        for (int u = 0; u < n; u++) {
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
+                double length = Math.hypot(xs[u] - xs[v], ys[u] - ys[v]);
+                if (length > 0) {
+                    scale = Math.min(scale, topology.cost(slot) / length);
+                }
+            }
+        }
+        // Without links of any length the estimate says nothing; shrink it a
+        // little so rounding can never push it above a real cost
+        costPerPixel = scale == Double.POSITIVE_INFINITY ? 0 : scale * (1 - 1e-9);
+        heuristicEpoch = topology.getEpoch();
+        heuristicLayout = graph.getLayoutEpoch();
+    }
+    
+    private static int idOf(TopologySnapshot topology, Router router) {
+        if (router == null) {
+            return -1;
+        }
+        int id = router.getId();
+        return id >= 0 && id < topology.size() && topology.getRouter(id) == router ? id : -1;
+    }
+    
+    /**
+     * Distances, predecessors and queue of one search direction. Entries
+     * count only when stamped by the current query, so starting a query
+     * touches nothing but the routers it reaches.
+     */
+    static final class Search {
+        int[] distances = new int[0];
+        int[] previous = new int[0];
+        private int[] stamps = new int[0];
+        private int stamp;
+        IndexedHeap heap;
+        int settled; // routers polled since start
+        
+        void prepare(int n) {
+            if (distances.length < n) {
+                distances = new int[n];
+                previous = new int[n];
+                stamps = new int[n];
+                stamp = 0;
+            }
+            if (heap == null || heap.capacity() < n) {
+                heap = new IndexedHeap(Math.max(n, 1));
+            }
+        }
+        
+        void start(int id, int key) {
+            heap.clear();
+            settled = 0;
+            if (++stamp == 0) {
+                // Stamp wrapped around, so old marks could look current
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            reach(id, 0, -1);
+            heap.insertOrDecrease(id, key);
+        }
+        
+        int distance(int id) {
+            return stamps[id] == stamp ? distances[id] : Router.INFINITY;
+        }
+        
+        void reach(int id, int distance, int predecessor) {
+            stamps[id] = stamp;
+            distances[id] = distance;
+            previous[id] = predecessor;
+        }
+    }
+}
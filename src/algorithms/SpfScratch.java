@@ -0,0 +1,101 @@
+package algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-thread working storage for shortest path first runs.
+ * Arrays only grow, so once a thread has run SPF on the largest topology
+ * it sees, further runs allocate nothing.
+ */
+final class SpfScratch {
+    private static final ThreadLocal<SpfScratch> PER_THREAD = ThreadLocal.withInitial(SpfScratch::new);
+    
+    int[] distances = new int[0]; // router id -> distance from the source
+    int[] previous = new int[0]; // router id -> predecessor on the shortest path
+    int[] firstHops = new int[0]; // router id -> neighbor of the source the path starts with
+    int[] order = new int[0]; // routers in the order they were settled
+    int settledCount;
+    private int[] settled = new int[0]; // router id -> stamp of the run that settled it
+    private int stamp;
+    private long[] hopMasks = new long[0];
+    private IndexedHeap heap;
+    private BucketQueue buckets;
+    private int bucketCost = -1; // largest link cost the bucket queue was sized for
+    
+    /**
+     * Scratch storage of the calling thread
+     */
+    static SpfScratch get() {
+        return PER_THREAD.get();
+    }
+    
+    /**
+     * Prepare for a run over n routers: every distance is infinite, no
+     * predecessors or first hops are set and no router is settled
+     */
+    void reset(int n) {
+        if (distances.length < n) {
+            distances = new int[n];
+            previous = new int[n];
+            firstHops = new int[n];
+            settled = new int[n];
+            order = new int[n];
+            stamp = 0;
+        }
+        settledCount = 0;
+        Arrays.fill(distances, 0, n, Integer.MAX_VALUE);
+        Arrays.fill(previous, 0, n, -1);
+        Arrays.fill(firstHops, 0, n, -1);
+        if (++stamp == 0) {
+            // Stamp wrapped around, so old marks could look current
+            Arrays.fill(settled, 0);
+            stamp = 1;
+        }
+    }
+    
+    boolean isSettled(int id) {
+        return settled[id] == stamp;
+    }
+    
+    void settle(int id) {
+        settled[id] = stamp;
+        order[settledCount++] = id;
+    }
+    
+    /**
+     * Zeroed bitset words for equal-cost first hop sets
+     */
+    long[] hopMasks(int words) {
+        if (hopMasks.length < words) {
+            hopMasks = new long[words];
+        } else {
+            Arrays.fill(hopMasks, 0, words, 0L);
+        }
+        return hopMasks;
+    }
+    
+    /**
+     * Empty heap able to hold n routers
+     */
+    IndexedHeap heap(int n) {
+        if (heap == null || heap.capacity() < n) {
+            heap = new IndexedHeap(n);
+        } else {
+            heap.clear();
+        }
+        return heap;
+    }
+    
+    /**
+     * Empty bucket queue for n routers and link costs up to maxCost
+     */
+    BucketQueue buckets(int n, int maxCost) {
+        if (buckets == null || buckets.capacity() < n || bucketCost < maxCost) {
+            buckets = new BucketQueue(n, maxCost);
+            bucketCost = maxCost;
+        } else {
+            buckets.clear();
+        }
+        return buckets;
+    }
+}
@@ -131,7 +131,7 @@ public class CenterPanel extends JPanel {
     private Link getLinkAt(int x, int y) {
         final int LINK_CLICK_TOLERANCE = 5; // pixels
         
-        for (Link link : graph.getLinks()) {
+        for (Link link : graph.getLinksNear(x, y, LINK_CLICK_TOLERANCE)) {
             Router source = link.getSource();
             Router dest = link.getDestination();
             Point sourcePos = source.getPosition();
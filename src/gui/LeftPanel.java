@@ -2,11 +2,15 @@ package gui;
 
 import models.NetworkGraph;
 import models.Router;
+import simulation.TopologyGenerator;
+import storage.TopologyFile;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Left panel with buttons for adding routers, links, and running algorithms.
@@ -18,6 +22,9 @@ public class LeftPanel extends JPanel {
     private JButton addLinkButton;
     private JButton runAlgorithmButton;
     private JButton undoAllButton;
+    private JButton saveTopologyButton;
+    private JButton loadTopologyButton;
+    private JButton generateTopologyButton;
     private JComboBox<String> algorithmComboBox;
     
     private int routerCounter = 1;
@@ -73,6 +80,31 @@ public class LeftPanel extends JPanel {
             }
         });
         
+        // Save/Load topology buttons
+        saveTopologyButton = new JButton("Save Topology");
+        saveTopologyButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveTopology();
+            }
+        });
+        
+        loadTopologyButton = new JButton("Load Topology");
+        loadTopologyButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadTopology();
+            }
+        });
+        
+        generateTopologyButton = new JButton("Generate Topology");
+        generateTopologyButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                generateTopology();
+            }
+        });
+        
         // Add components with spacing
         add(Box.createVerticalStrut(10));
         add(addRouterButton);
@@ -86,6 +118,14 @@ public class LeftPanel extends JPanel {
         add(Box.createVerticalStrut(20));
         add(new JSeparator());
         add(Box.createVerticalStrut(10));
+        add(saveTopologyButton);
+        add(Box.createVerticalStrut(10));
+        add(loadTopologyButton);
+        add(Box.createVerticalStrut(10));
+        add(generateTopologyButton);
+        add(Box.createVerticalStrut(20));
+        add(new JSeparator());
+        add(Box.createVerticalStrut(10));
         add(undoAllButton);
         add(Box.createVerticalGlue());
     }
@@ -228,9 +268,155 @@ public class LeftPanel extends JPanel {
         }
     }
     
+    private void saveTopology() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Save Topology");
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        File file = chooser.getSelectedFile();
+        try {
+            TopologyFile.save(graph, file);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, 
+                "Could not save topology:\n" + ex.getMessage(),
+                "Error", 
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void loadTopology() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Load Topology");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        // Stop any running simulation before replacing the network
+        firePropertyChange("stopSimulation", null, null);
+        centerPanel.clearHighlights();
+        centerPanel.setSelectedRouter(null);
+        
+        File file = chooser.getSelectedFile();
+        try {
+            TopologyFile.load(file, graph);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, 
+                "Could not load topology:\n" + ex.getMessage(),
+                "Error", 
+                JOptionPane.ERROR_MESSAGE);
+        }
+        
+        routerCounter = graph.getRouterCount() + 1;
+        centerPanel.repaint();
+        firePropertyChange("graphChanged", null, file.getName());
+    }
+    
+    private void generateTopology() {
+        String[] types = {"Random (Erdős–Rényi)", "Waxman", "Scale-free (Barabási–Albert)",
+                          "Grid", "Torus", "Fat-tree"};
+        
+        JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Generate Topology", true);
+        dialog.setLayout(new GridLayout(4, 2, 5, 5));
+        
+        JLabel typeLabel = new JLabel("Topology:");
+        JComboBox<String> typeCombo = new JComboBox<>(types);
+        
+        JLabel sizeLabel = new JLabel("Routers (k for fat-tree):");
+        JTextField sizeField = new JTextField("20");
+        
+        JLabel seedLabel = new JLabel("Seed:");
+        JTextField seedField = new JTextField("1");
+        
+        JButton okButton = new JButton("OK");
+        JButton cancelButton = new JButton("Cancel");
+        
+        okButton.addActionListener(e -> {
+            try {
+                int size = Integer.parseInt(sizeField.getText().trim());
+                long seed = Long.parseLong(seedField.getText().trim());
+                if (size < 2) {
+                    JOptionPane.showMessageDialog(dialog, 
+                        "Size must be at least 2.",
+                        "Invalid Size", 
+                        JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                
+                // Stop any running simulation before replacing the network
+                firePropertyChange("stopSimulation", null, null);
+                centerPanel.clearHighlights();
+                centerPanel.setSelectedRouter(null);
+                
+                TopologyGenerator generator = new TopologyGenerator(seed);
+                int width = centerPanel.getWidth();
+                int height = centerPanel.getHeight();
+                if (width > 0 && height > 0) {
+                    generator.setCanvasSize(width, height);
+                }
+                
+                int side = (int) Math.ceil(Math.sqrt(size));
+                switch (typeCombo.getSelectedIndex()) {
+                    case 0:
+                        generator.erdosRenyi(graph, size, Math.min(1.0, 4.0 / (size - 1)));
+                        break;
+                    case 1:
+                        generator.waxman(graph, size, 0.15, 0.4);
+                        break;
+                    case 2:
+                        generator.barabasiAlbert(graph, size, 2);
+                        break;
+                    case 3:
+                        generator.grid(graph, side, side, false);
+                        break;
+                    case 4:
+                        generator.grid(graph, side, side, true);
+                        break;
+                    default:
+                        generator.fatTree(graph, size);
+                        break;
+                }
+                
+                routerCounter = graph.getRouterCount() + 1;
+                centerPanel.repaint();
+                firePropertyChange("graphChanged", null, "generated");
+                dialog.dispose();
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(dialog, 
+                    "Invalid size or seed value.",
+                    "Error", 
+                    JOptionPane.ERROR_MESSAGE);
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(dialog, 
+                    ex.getMessage(),
+                    "Error", 
+                    JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        
+        cancelButton.addActionListener(e -> dialog.dispose());
+        
+        dialog.add(typeLabel);
+        dialog.add(typeCombo);
+        dialog.add(sizeLabel);
+        dialog.add(sizeField);
+        dialog.add(seedLabel);
+        dialog.add(seedField);
+        dialog.add(okButton);
+        dialog.add(cancelButton);
+        
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+    
     public void setButtonsEnabled(boolean enabled) {
         addRouterButton.setEnabled(enabled);
         addLinkButton.setEnabled(enabled);
+        saveTopologyButton.setEnabled(enabled);
+        loadTopologyButton.setEnabled(enabled);
+        generateTopologyButton.setEnabled(enabled);
         runAlgorithmButton.setEnabled(enabled);
         algorithmComboBox.setEnabled(enabled);
         // Keep Undo All button always enabled
@@ -166,6 +166,12 @@ public class MainFrame extends JFrame {
             statusLabel.setText("Running Link State algorithm...");
         }
         
+        // Pre-flight check: routers in other components will stay unreachable
+        if (!graph.isConnected()) {
+            statusLabel.setText(statusLabel.getText() + " (network has " +
+                graph.getComponentCount() + " disconnected parts)");
+        }
+        
         // Highlight source router
         Set<Router> highlight = new HashSet<>();
         highlight.add(source);
@@ -3,12 +3,15 @@ package gui;
 import models.NetworkGraph;
 import models.Router;
 import models.Link;
+import storage.RoutingTableFile;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -20,6 +23,8 @@ public class RightPanel extends JPanel {
     private JComboBox<String> sourceComboBox;
     private JButton assignCostButton;
     private JButton displayTablesButton;
+    private JButton saveTablesButton;
+    private JButton loadTablesButton;
     private JTextField costField;
     private JDialog routingTablesDialog;
     
@@ -61,6 +66,23 @@ public class RightPanel extends JPanel {
             }
         });
         
+        // Save/Load routing tables buttons
+        saveTablesButton = new JButton("Save Routing Tables");
+        saveTablesButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveRoutingTables();
+            }
+        });
+        
+        loadTablesButton = new JButton("Load Routing Tables");
+        loadTablesButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadRoutingTables();
+            }
+        });
+        
         // Add components
         add(Box.createVerticalStrut(10));
         add(assignCostButton);
@@ -71,6 +93,10 @@ public class RightPanel extends JPanel {
         add(sourceComboBox);
         add(Box.createVerticalStrut(10));
         add(displayTablesButton);
+        add(Box.createVerticalStrut(10));
+        add(saveTablesButton);
+        add(Box.createVerticalStrut(10));
+        add(loadTablesButton);
         add(Box.createVerticalGlue());
     }
     
@@ -268,9 +294,50 @@ public class RightPanel extends JPanel {
         return panel;
     }
     
+    private void saveRoutingTables() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Save Routing Tables");
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        try {
+            RoutingTableFile.save(graph, chooser.getSelectedFile());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, 
+                "Could not save routing tables:\n" + ex.getMessage(),
+                "Error", 
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void loadRoutingTables() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Load Routing Tables");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        File file = chooser.getSelectedFile();
+        try {
+            int restored = RoutingTableFile.open(file).applyTo(graph);
+            JOptionPane.showMessageDialog(this, 
+                "Restored routing tables for " + restored + " router(s).",
+                "Routing Tables Loaded", 
+                JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, 
+                "Could not load routing tables:\n" + ex.getMessage(),
+                "Error", 
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
     public void setControlsEnabled(boolean enabled) {
         assignCostButton.setEnabled(enabled);
         displayTablesButton.setEnabled(enabled);
+        saveTablesButton.setEnabled(enabled);
+        loadTablesButton.setEnabled(enabled);
         sourceComboBox.setEnabled(enabled);
         costField.setEnabled(enabled);
     }
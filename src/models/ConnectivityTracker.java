@@ -0,0 +1,122 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * Tracks connected components of the topology with a union-find structure.
+ * Router and link additions are merged incrementally; removals cannot be
+ * undone in a union-find, so they mark the structure stale and it is rebuilt
+ * from the topology snapshot on the next query.
+ */
+class ConnectivityTracker {
+    private int[] parent;
+    private int[] size;
+    private int componentCount;
+    private boolean stale;
+    
+    ConnectivityTracker() {
+        this.parent = new int[16];
+        this.size = new int[16];
+        this.componentCount = 0;
+        this.stale = false;
+    }
+    
+    void routerAdded(int id) {
+        if (stale) {
+            return;
+        }
+        if (id >= parent.length) {
+            int newLength = Math.max(id + 1, parent.length * 2);
+            parent = Arrays.copyOf(parent, newLength);
+            size = Arrays.copyOf(size, newLength);
+        }
+        parent[id] = id;
+        size[id] = 1;
+        componentCount++;
+    }
+    
+    void linkAdded(int u, int v) {
+        if (!stale) {
+            union(u, v);
+        }
+    }
+    
+    /**
+     * A router or link was removed: components may have split
+     */
+    void invalidate() {
+        stale = true;
+    }
+    
+    void clear() {
+        componentCount = 0;
+        stale = false;
+    }
+    
+    boolean isStale() {
+        return stale;
+    }
+    
+    /**
+     * Recompute all components from a snapshot of the current topology
+     */
+    void rebuild(TopologySnapshot topology) {
+        int n = topology.size();
+        if (parent.length < n) {
+            parent = new int[n];
+            size = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        componentCount = n;
+        for (int u = 0; u < n; u++) {
+            for (int slot = topology.offset(u), end = topology.offset(u + 1); slot < end; slot++) {
+                int v = topology.target(slot);
+                if (u < v) {
+                    union(u, v);
+                }
+            }
+        }
+        stale = false;
+    }
+    
+    int getComponentCount() {
+        return componentCount;
+    }
+    
+    /**
+     * Representative router id of the component containing id
+     */
+    int find(int id) {
+        int root = id;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // Path compression
+        while (parent[id] != root) {
+            int next = parent[id];
+            parent[id] = root;
+            id = next;
+        }
+        return root;
+    }
+    
+    private void union(int u, int v) {
+        int rootU = find(u);
+        int rootV = find(v);
+        if (rootU == rootV) {
+            return;
+        }
+        // Union by size
+        if (size[rootU] < size[rootV]) {
+            int swap = rootU;
+            rootU = rootV;
+            rootV = swap;
+        }
+        parent[rootV] = rootU;
+        size[rootU] += size[rootV];
+        componentCount--;
+    }
+}
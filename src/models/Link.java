@@ -62,8 +62,20 @@ public class Link {
     
     @Override
     public int hashCode() {
-        // Use symmetric hash code for undirected links
-        return source.hashCode() + destination.hashCode();
+        // Order the endpoint hashes so the result stays symmetric for undirected links
+        // without collapsing distinct pairs that happen to share a sum
+        int h1 = source.hashCode();
+        int h2 = destination.hashCode();
+        return 31 * Math.min(h1, h2) + Math.max(h1, h2);
+    }
+    
+    /**
+     * Canonical key for the undirected pair of router ids (lowId, highId)
+     */
+    public static long key(int id1, int id2) {
+        int low = Math.min(id1, id2);
+        int high = Math.max(id1, id2);
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
     }
     
     @Override
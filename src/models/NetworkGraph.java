@@ -2,25 +2,147 @@ package models;
 
 import java.awt.Point;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents the entire network topology with routers and links.
+ *
+ * Bulk changes can be grouped with beginBatch()/commitBatch(). Inside a batch
+ * the spatial index is not maintained and removed routers keep their id slot
+ * until the batch commits, when ids, links and routing tables are compacted
+ * in one pass and listeners are notified once.
  */
 public class NetworkGraph {
-    private List<Router> routers;
-    private List<Link> links;
+    private List<Router> routers; // indexed by Router.getId()
+    private Map<Long, Link> links; // Link.key(lowId, highId) -> link, in insertion order
+    private Map<String, Router> routersByName; // name -> router
+    private List<Router> routersView;
+    private Collection<Link> linksView;
+    private long topologyEpoch; // bumped on every router/link/cost change
+    private long layoutEpoch; // bumped whenever a router moves on the canvas
+    private TopologySnapshot snapshot; // cached CSR view, null when stale
+    private SpatialGrid spatialIndex; // canvas positions for hit testing
+    private ConnectivityTracker connectivity; // connected components
+    private boolean spatialIndexStale; // rebuilt on the next hit test
+    private int batchDepth; // nesting level of beginBatch()
+    private long batchStartEpoch;
+    private int pendingRemovals; // removed routers still holding an id slot
+    private List<TopologyListener> listeners;
     
     public NetworkGraph() {
         this.routers = new ArrayList<>();
-        this.links = new ArrayList<>();
+        this.links = new LinkedHashMap<>();
+        this.routersByName = new HashMap<>();
+        this.routersView = Collections.unmodifiableList(routers);
+        this.linksView = Collections.unmodifiableCollection(links.values());
+        this.topologyEpoch = 0;
+        this.layoutEpoch = 0;
+        this.spatialIndex = new SpatialGrid();
+        this.connectivity = new ConnectivityTracker();
+        this.spatialIndexStale = false;
+        this.batchDepth = 0;
+        this.pendingRemovals = 0;
+        this.listeners = new CopyOnWriteArrayList<>();
     }
     
+    /**
+     * Register a listener notified after every topology change, or once per
+     * committed batch
+     */
+    public void addTopologyListener(TopologyListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeTopologyListener(TopologyListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Start a batch of changes. Batches nest; only the outermost commit
+     * performs the deferred maintenance and notifies listeners.
+     */
+    public void beginBatch() {
+        if (batchDepth++ == 0) {
+            batchStartEpoch = topologyEpoch;
+        }
+    }
+    
+    /**
+     * Finish a batch started with beginBatch()
+     */
+    public void commitBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("commitBatch() without beginBatch()");
+        }
+        if (--batchDepth == 0) {
+            compactRouters();
+            if (topologyEpoch != batchStartEpoch) {
+                fireTopologyChanged();
+            }
+        }
+    }
+    
+    /**
+     * Apply a group of changes as a single batch
+     */
+    public void applyBatch(Runnable changes) {
+        beginBatch();
+        try {
+            changes.run();
+        } finally {
+            commitBatch();
+        }
+    }
+    
+    public boolean isInBatch() {
+        return batchDepth > 0;
+    }
+    
+    /**
+     * Read-only live view of the routers, ordered by id.
+     * Do not modify the graph while iterating over it.
+     */
     public List<Router> getRouters() {
-        return new ArrayList<>(routers);
+        compactRouters();
+        return routersView;
+    }
+    
+    /**
+     * Read-only live view of the links, in insertion order.
+     * Do not modify the graph while iterating over it.
+     */
+    public Collection<Link> getLinks() {
+        return linksView;
+    }
+    
+    /**
+     * Monotonically increasing counter that changes whenever routers, links or
+     * link costs change. Callers can cache derived data and compare epochs.
+     */
+    public long getTopologyEpoch() {
+        return topologyEpoch;
     }
     
-    public List<Link> getLinks() {
-        return new ArrayList<>(links);
+    /**
+     * Counter that changes whenever a router is moved. Router positions are
+     * not part of the topology, so moves leave the topology epoch alone.
+     */
+    public long getLayoutEpoch() {
+        return layoutEpoch;
+    }
+    
+    /**
+     * Get an immutable CSR snapshot of the current topology.
+     * The snapshot is cached and only rebuilt after the topology changes.
+     */
+    public TopologySnapshot getSnapshot() {
+        TopologySnapshot current = snapshot;
+        if (current == null) {
+            compactRouters();
+            current = new TopologySnapshot(routers, links.values(), links.size(), topologyEpoch);
+            snapshot = current;
+        }
+        return current;
     }
     
     /**
@@ -34,7 +156,17 @@ public class NetworkGraph {
         }
         
         Router router = new Router(name, x, y);
+        router.attach(this, routers.size());
         routers.add(router);
+        routersByName.put(name, router);
+        if (batchDepth > 0) {
+            spatialIndexStale = true;
+        } else if (!spatialIndexStale) {
+            spatialIndex.addRouter(router);
+        }
+        connectivity.routerAdded(router.getId());
+        fireRoutersChanged();
+        topologyChanged();
         return router;
     }
     
@@ -44,18 +176,35 @@ public class NetworkGraph {
     public void removeRouter(Router router) {
         if (router == null) return;
         
-        // Remove all links connected to this router
-        links.removeIf(link -> link.getSource().equals(router) || 
-                            link.getDestination().equals(router));
+        int id = indexOf(router);
+        if (id < 0) return;
+        router = routers.get(id);
         
-        // Remove router from all neighbors
-        for (Router r : routers) {
-            if (r.hasNeighbor(router)) {
-                r.removeNeighbor(router);
+        // Remove all links connected to this router, and the router from its neighbors
+        boolean indexSpatially = batchDepth == 0 && !spatialIndexStale;
+        for (Router neighbor : router.getNeighbors().keySet()) {
+            Link link = links.remove(Link.key(id, neighbor.getId()));
+            if (indexSpatially) {
+                spatialIndex.removeLink(link);
             }
+            neighbor.removeNeighbor(router);
+        }
+        if (indexSpatially) {
+            spatialIndex.removeRouter(router, router.getPosition());
+        } else {
+            spatialIndexStale = true;
         }
         
-        routers.remove(router);
+        // The router keeps its slot in the id space until the next compaction
+        routersByName.remove(router.getName());
+        router.detach();
+        pendingRemovals++;
+        if (batchDepth == 0) {
+            compactRouters();
+        }
+        connectivity.invalidate();
+        fireRoutersChanged();
+        topologyChanged();
     }
     
     /**
@@ -70,23 +219,43 @@ public class NetworkGraph {
             return null; // Cannot link router to itself
         }
         
+        int sourceId = indexOf(source);
+        int destinationId = indexOf(destination);
+        if (sourceId < 0 || destinationId < 0) {
+            return null; // Both routers must belong to this graph
+        }
+        source = routers.get(sourceId);
+        destination = routers.get(destinationId);
+        
         // Check if link already exists
-        Link existing = getLink(source, destination);
+        long key = Link.key(sourceId, destinationId);
+        Link existing = links.get(key);
         if (existing != null) {
+            int oldCost = existing.getCost();
             existing.setCost(cost);
             // Update neighbor relationship
             source.addNeighbor(destination, cost);
             destination.addNeighbor(source, cost);
+            fireLinkChanged(existing, oldCost, cost);
+            topologyChanged();
             return existing;
         }
         
         Link link = new Link(source, destination, cost);
-        links.add(link);
+        links.put(key, link);
+        if (batchDepth > 0) {
+            spatialIndexStale = true;
+        } else if (!spatialIndexStale) {
+            spatialIndex.addLink(link);
+        }
+        connectivity.linkAdded(sourceId, destinationId);
         
         // Update neighbor relationships
         source.addNeighbor(destination, cost);
         destination.addNeighbor(source, cost);
         
+        fireLinkChanged(link, Router.INFINITY, cost);
+        topologyChanged();
         return link;
     }
     
@@ -96,9 +265,17 @@ public class NetworkGraph {
     public void removeLink(Router source, Router destination) {
         Link link = getLink(source, destination);
         if (link != null) {
-            links.remove(link);
-            source.removeNeighbor(destination);
-            destination.removeNeighbor(source);
+            links.remove(Link.key(link.getSource().getId(), link.getDestination().getId()));
+            if (batchDepth > 0) {
+                spatialIndexStale = true;
+            } else if (!spatialIndexStale) {
+                spatialIndex.removeLink(link);
+            }
+            connectivity.invalidate();
+            link.getSource().removeNeighbor(link.getDestination());
+            link.getDestination().removeNeighbor(link.getSource());
+            fireLinkChanged(link, link.getCost(), Router.INFINITY);
+            topologyChanged();
         }
     }
     
@@ -106,46 +283,190 @@ public class NetworkGraph {
      * Get link between two routers (if exists)
      */
     public Link getLink(Router source, Router destination) {
-        for (Link link : links) {
-            if (link.connects(source, destination)) {
-                return link;
-            }
+        int sourceId = indexOf(source);
+        int destinationId = indexOf(destination);
+        if (sourceId < 0 || destinationId < 0) {
+            return null;
         }
-        return null;
+        return links.get(Link.key(sourceId, destinationId));
     }
     
     /**
      * Get router by name
      */
     public Router getRouterByName(String name) {
-        for (Router router : routers) {
-            if (router.getName().equals(name)) {
-                return router;
+        return routersByName.get(name);
+    }
+    
+    /**
+     * Get router by its dense id
+     */
+    public Router getRouter(int id) {
+        compactRouters();
+        return routers.get(id);
+    }
+    
+    public int getRouterCount() {
+        compactRouters();
+        return routers.size();
+    }
+    
+    /**
+     * Router in an id slot without compacting first; may be a detached router
+     * while a batch has pending removals. Used by routing tables, whose ids
+     * only change at compaction.
+     */
+    Router routerSlot(int id) {
+        return routers.get(id);
+    }
+    
+    int routerSlotCount() {
+        return routers.size();
+    }
+    
+    /**
+     * Resolve the id of a router in this graph, or -1 if it is not part of it
+     */
+    private int indexOf(Router router) {
+        if (router == null) {
+            return -1;
+        }
+        int id = router.getId();
+        if (id >= 0 && id < routers.size() && routers.get(id) == router) {
+            return id;
+        }
+        // Routers are equal by name, so fall back to the name index
+        Router byName = routersByName.get(router.getName());
+        return byName == null ? -1 : byName.getId();
+    }
+    
+    private void topologyChanged() {
+        topologyEpoch++;
+        snapshot = null;
+        if (batchDepth == 0) {
+            fireTopologyChanged();
+        }
+    }
+    
+    private void fireTopologyChanged() {
+        for (TopologyListener listener : listeners) {
+            listener.topologyChanged(this);
+        }
+    }
+    
+    private void fireLinkChanged(Link link, int oldCost, int newCost) {
+        for (TopologyListener listener : listeners) {
+            listener.linkChanged(this, link, oldCost, newCost);
+        }
+    }
+    
+    private void fireRoutersChanged() {
+        for (TopologyListener listener : listeners) {
+            listener.routersChanged(this);
+        }
+    }
+    
+    /**
+     * Drop the id slots of removed routers: ids above them shift down, links
+     * are re-keyed and routing table columns are remapped, all in one pass
+     */
+    private void compactRouters() {
+        if (pendingRemovals == 0) {
+            return;
+        }
+        int oldCount = routers.size();
+        int[] newIds = new int[oldCount];
+        int next = 0;
+        for (int i = 0; i < oldCount; i++) {
+            Router router = routers.get(i);
+            if (router.getId() < 0) {
+                newIds[i] = -1; // Detached by removeRouter
+            } else {
+                newIds[i] = next;
+                router.setId(next);
+                routers.set(next++, router);
             }
         }
-        return null;
+        routers.subList(next, oldCount).clear();
+        pendingRemovals = 0;
+        for (Router router : routers) {
+            router.remapTable(newIds);
+        }
+        rebuildLinkIndex();
+    }
+    
+    /**
+     * Re-key all links after router ids have shifted, keeping insertion order
+     */
+    private void rebuildLinkIndex() {
+        List<Link> ordered = new ArrayList<>(links.values());
+        links.clear();
+        for (Link link : ordered) {
+            links.put(Link.key(link.getSource().getId(), link.getDestination().getId()), link);
+        }
     }
     
     /**
      * Get router at a specific position (for GUI click detection)
      */
     public Router getRouterAt(int x, int y, int radius) {
+        refreshSpatialIndex();
+        return spatialIndex.routerAt(x, y, radius);
+    }
+    
+    /**
+     * Get candidate links near a position (for GUI click detection).
+     * Returns the links whose bounding box, grown by tolerance, contains the point;
+     * callers still do the exact distance test.
+     */
+    public List<Link> getLinksNear(int x, int y, int tolerance) {
+        refreshSpatialIndex();
+        return spatialIndex.linksNear(x, y, tolerance);
+    }
+    
+    /**
+     * Re-index every router and link after a batch skipped the spatial index
+     */
+    private void refreshSpatialIndex() {
+        if (!spatialIndexStale) {
+            return;
+        }
+        compactRouters();
+        spatialIndex.clear();
         for (Router router : routers) {
-            Point pos = router.getPosition();
-            double distance = Math.sqrt(Math.pow(x - pos.x, 2) + Math.pow(y - pos.y, 2));
-            if (distance <= radius) {
-                return router;
-            }
+            spatialIndex.addRouter(router);
+        }
+        for (Link link : links.values()) {
+            spatialIndex.addLink(link);
         }
-        return null;
+        spatialIndexStale = batchDepth > 0;
+    }
+    
+    /**
+     * Keep the spatial index in sync when a router is dragged
+     */
+    void routerMoved(Router router, Point oldPosition) {
+        layoutEpoch++;
+        if (batchDepth > 0) {
+            spatialIndexStale = true;
+        }
+        if (spatialIndexStale) {
+            return; // Rebuilt from current positions on the next hit test
+        }
+        List<Link> incident = new ArrayList<>();
+        for (Router neighbor : router.getNeighbors().keySet()) {
+            incident.add(links.get(Link.key(router.getId(), neighbor.getId())));
+        }
+        spatialIndex.moveRouter(router, oldPosition, incident);
     }
     
     /**
      * Reset all routing tables
      */
     public void resetRoutingTables() {
+        compactRouters();
         for (Router router : routers) {
-            router.resetRoutingTable(routers);
+            router.resetRoutingTable();
         }
     }
     
@@ -153,34 +474,55 @@ public class NetworkGraph {
      * Clear the entire network
      */
     public void clear() {
+        for (Router router : routers) {
+            router.detach();
+        }
         routers.clear();
         links.clear();
+        routersByName.clear();
+        spatialIndex.clear();
+        spatialIndexStale = false;
+        pendingRemovals = 0;
+        connectivity.clear();
+        fireRoutersChanged();
+        topologyChanged();
     }
     
     /**
      * Check if the graph is connected
      */
     public boolean isConnected() {
-        if (routers.isEmpty()) {
-            return true;
+        return getComponentCount() <= 1;
+    }
+    
+    /**
+     * Number of connected components (0 for an empty network)
+     */
+    public int getComponentCount() {
+        refreshConnectivity();
+        return connectivity.getComponentCount();
+    }
+    
+    /**
+     * Component id of a router: two routers are connected iff their component ids match.
+     * Component ids are only meaningful until the next topology change.
+     * Returns -1 if the router is not part of this graph.
+     */
+    public int componentOf(Router router) {
+        refreshConnectivity();
+        int id = indexOf(router);
+        if (id < 0) {
+            return -1;
         }
-        
-        Set<Router> visited = new HashSet<>();
-        Queue<Router> queue = new LinkedList<>();
-        queue.add(routers.get(0));
-        visited.add(routers.get(0));
-        
-        while (!queue.isEmpty()) {
-            Router current = queue.poll();
-            for (Router neighbor : current.getNeighbors().keySet()) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    queue.add(neighbor);
-                }
-            }
+        return connectivity.find(id);
+    }
+    
+    /**
+     * Rebuild components after removals; additions are merged as they happen
+     */
+    private void refreshConnectivity() {
+        if (connectivity.isStale()) {
+            connectivity.rebuild(getSnapshot());
         }
-        
-        return visited.size() == routers.size();
     }
 }
-
@@ -1,31 +1,73 @@
 package models;
 
 import java.awt.Point;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Represents a router (node) in the network topology.
  * Each router maintains its routing table and knows about its neighbors.
+ *
+ * The routing table is stored densely: costs[d] and nextHops[d] hold the
+ * route to the router whose id is d in the owning NetworkGraph, which acts
+ * as the symbol table between ids and names. Until an algorithm writes a
+ * route the arrays are not allocated and the table implicitly holds only
+ * self and the direct neighbors, so building large graphs stays cheap. A
+ * link cost increase materializes the implicit table first, since a written
+ * table keeps the old route until an algorithm replaces it.
+ *
+ * Algorithms may also store the full set of equal-cost next hops of every
+ * destination, in compressed rows like TopologySnapshot. Forwarding then
+ * spreads flows over those hops by hash; the sets are dropped as soon as any
+ * route in the table changes.
  */
 public class Router {
+    /** Cost of an unreachable destination */
+    public static final int INFINITY = Integer.MAX_VALUE;
+    /** Next hop id of an unreachable destination */
+    public static final int NO_HOP = -1;
+    
     private String name;
+    private int id; // index in the owning NetworkGraph, -1 when detached
+    private NetworkGraph owner;
     private Point position; // For GUI visualization
-    private Map<String, Integer> routingTable; // destination -> cost
-    private Map<String, String> nextHopTable; // destination -> next hop router name
+    private int[] costs; // destination id -> cost, null while implicit
+    private int[] nextHops; // destination id -> next hop router id, null while implicit
+    private int[] equalCostOffsets; // destination id -> first slot in equalCostHops, null if no sets
+    private int[] equalCostHops; // next hops of the equal-cost routes, ascending per destination
     private Map<Router, Integer> neighbors; // direct links and their costs
+    private Map<Router, Integer> neighborsView;
+    private Map<String, Integer> routingTableView;
+    private Map<String, String> nextHopTableView;
     
     public Router(String name, int x, int y) {
         this.name = name;
+        this.id = -1;
         this.position = new Point(x, y);
-        this.routingTable = new HashMap<>();
-        this.nextHopTable = new HashMap<>();
+        this.costs = null;
+        this.nextHops = null;
         this.neighbors = new HashMap<>();
-        
-        // Initialize routing table: distance to self is 0
-        routingTable.put(name, 0);
-        nextHopTable.put(name, name);
+        this.neighborsView = Collections.unmodifiableMap(neighbors);
+        this.routingTableView = new TableView<Integer>() {
+            @Override
+            Integer valueAt(int destId) {
+                return getCost(destId);
+            }
+        };
+        this.nextHopTableView = new TableView<String>() {
+            @Override
+            String valueAt(int destId) {
+                return hopName(getNextHopId(destId));
+            }
+        };
     }
     
     public Router(String name) {
@@ -36,40 +78,82 @@ public class Router {
         return name;
     }
     
+    /**
+     * Get the dense index assigned by the owning NetworkGraph (-1 if not in a graph)
+     */
+    public int getId() {
+        return id;
+    }
+    
+    void setId(int id) {
+        this.id = id;
+    }
+    
+    void attach(NetworkGraph owner, int id) {
+        this.owner = owner;
+        this.id = id;
+    }
+    
+    void detach() {
+        this.owner = null;
+        this.id = -1;
+    }
+    
     public Point getPosition() {
         return position;
     }
     
     public void setPosition(int x, int y) {
+        Point oldPosition = position;
         this.position = new Point(x, y);
+        if (owner != null) {
+            owner.routerMoved(this, oldPosition);
+        }
     }
     
     public void setPosition(Point p) {
-        this.position = new Point(p);
+        setPosition(p.x, p.y);
     }
     
+    /**
+     * Read-only view of the routing table (destination name -> cost).
+     * The view is backed by the dense table and is not copied.
+     */
     public Map<String, Integer> getRoutingTable() {
-        return new HashMap<>(routingTable);
+        return routingTableView;
     }
     
+    /**
+     * Read-only view of the next hop table (destination name -> next hop name, "-" if none)
+     */
     public Map<String, String> getNextHopTable() {
-        return new HashMap<>(nextHopTable);
+        return nextHopTableView;
     }
     
+    /**
+     * Read-only live view of the direct neighbors and their link costs
+     */
     public Map<Router, Integer> getNeighbors() {
-        return new HashMap<>(neighbors);
+        return neighborsView;
     }
     
     /**
      * Add a neighbor router with a direct link cost
      */
     public void addNeighbor(Router neighbor, int cost) {
+        Integer oldCost = neighbors.get(neighbor);
+        if (costs == null && oldCost != null && oldCost < cost) {
+            // A written table keeps the old route on a cost increase, so the
+            // implicit one must be pinned before the link changes under it
+            materializeTable(0);
+        }
         neighbors.put(neighbor, cost);
+        equalCostOffsets = null; // Sets may no longer match the links
+        equalCostHops = null;
         // Update routing table if this is a better path
-        String neighborName = neighbor.getName();
-        if (!routingTable.containsKey(neighborName) || routingTable.get(neighborName) > cost) {
-            routingTable.put(neighborName, cost);
-            nextHopTable.put(neighborName, neighborName);
+        int neighborId = neighbor.getId();
+        if (costs != null && neighborId >= 0 && getCost(neighborId) > cost) {
+            setRoute(neighborId, cost, neighborId);
         }
     }
     
@@ -78,31 +162,145 @@ public class Router {
      */
     public void removeNeighbor(Router neighbor) {
         neighbors.remove(neighbor);
-        String neighborName = neighbor.getName();
-        routingTable.remove(neighborName);
-        nextHopTable.remove(neighborName);
+        equalCostOffsets = null;
+        equalCostHops = null;
+        int neighborId = neighbor.getId();
+        if (costs != null && neighborId >= 0 && neighborId < costs.length) {
+            costs[neighborId] = INFINITY;
+            nextHops[neighborId] = NO_HOP;
+        }
     }
     
     /**
      * Update routing table entry
      */
     public void updateRoutingEntry(String destination, int cost, String nextHop) {
-        routingTable.put(destination, cost);
-        nextHopTable.put(destination, nextHop);
+        int destId = idOf(destination);
+        if (destId >= 0) {
+            setRoute(destId, cost, idOf(nextHop));
+        }
+    }
+    
+    /**
+     * Update routing table entry by router ids
+     */
+    public void setRoute(int destId, int cost, int nextHopId) {
+        equalCostOffsets = null;
+        equalCostHops = null;
+        if (costs == null) {
+            materializeTable(destId + 1);
+        } else if (destId >= costs.length) {
+            growTable(destId + 1);
+        }
+        costs[destId] = cost;
+        nextHops[destId] = nextHopId;
+    }
+    
+    /**
+     * Get cost to a destination id (INFINITY if unknown)
+     */
+    public int getCost(int destId) {
+        if (costs == null) {
+            return implicitCost(destId);
+        }
+        return destId >= 0 && destId < costs.length ? costs[destId] : INFINITY;
+    }
+    
+    /**
+     * Get next hop id for a destination id (NO_HOP if unknown)
+     */
+    public int getNextHopId(int destId) {
+        if (nextHops == null) {
+            return implicitCost(destId) == INFINITY ? NO_HOP : destId;
+        }
+        return destId >= 0 && destId < nextHops.length ? nextHops[destId] : NO_HOP;
+    }
+    
+    /**
+     * Store the equal-cost next hops of every destination: those of
+     * destination d are hops[offsets[d]] .. hops[offsets[d + 1] - 1], in
+     * ascending order. Null drops the sets.
+     */
+    public void setEqualCostHops(int[] offsets, int[] hops) {
+        this.equalCostOffsets = offsets;
+        this.equalCostHops = offsets == null ? null : hops;
+    }
+    
+    /**
+     * Number of equal-cost next hops to a destination id; without stored
+     * sets this is 1 for a reachable destination and 0 otherwise
+     */
+    public int getEqualCostHopCount(int destId) {
+        if (equalCostOffsets == null || destId < 0 || destId + 1 >= equalCostOffsets.length) {
+            return getNextHopId(destId) == NO_HOP ? 0 : 1;
+        }
+        return equalCostOffsets[destId + 1] - equalCostOffsets[destId];
+    }
+    
+    /**
+     * Next hop ids of all equal-cost routes to a destination id, ascending;
+     * without stored sets just the next hop
+     */
+    public int[] getEqualCostHops(int destId) {
+        if (equalCostOffsets == null || destId < 0 || destId + 1 >= equalCostOffsets.length) {
+            int hop = getNextHopId(destId);
+            return hop == NO_HOP ? new int[0] : new int[] {hop};
+        }
+        return Arrays.copyOfRange(equalCostHops, equalCostOffsets[destId], equalCostOffsets[destId + 1]);
+    }
+    
+    /**
+     * Next hop for a flow to a destination id. Packets of one flow always
+     * take the same hop, while flows spread evenly over the equal-cost hops.
+     * The hash is mixed with this router's id so that routers along a path
+     * do not all make the same choice and leave some paths unused.
+     */
+    public int selectNextHop(int destId, int flowHash) {
+        int count = getEqualCostHopCount(destId);
+        if (count <= 1) {
+            return getNextHopId(destId);
+        }
+        long bucket = mix(flowHash ^ (id * 0x9E3779B9)) & 0xFFFFFFFFL;
+        return equalCostHops[equalCostOffsets[destId] + (int) ((bucket * count) >>> 32)];
+    }
+    
+    /**
+     * Hash of a flow's 5-tuple for selectNextHop
+     */
+    public static int flowHash(int sourceId, int destinationId, int sourcePort, int destinationPort, int protocol) {
+        int h = mix(sourceId);
+        h = mix(h * 31 + destinationId);
+        h = mix(h * 31 + sourcePort);
+        h = mix(h * 31 + destinationPort);
+        return mix(h * 31 + protocol);
+    }
+    
+    /**
+     * Murmur3 finalizer, spreads every input bit over the whole word
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
     }
     
     /**
      * Get cost to a destination
      */
     public Integer getCostTo(String destination) {
-        return routingTable.get(destination);
+        int destId = idOf(destination);
+        return destId < 0 ? null : getCost(destId);
     }
     
     /**
      * Get next hop for a destination
      */
     public String getNextHop(String destination) {
-        return nextHopTable.get(destination);
+        int destId = idOf(destination);
+        return destId < 0 ? null : hopName(getNextHopId(destId));
     }
     
     /**
@@ -120,49 +318,180 @@ public class Router {
     }
     
     /**
-     * Reset routing table to initial state (only self)
-     * Note: This method does not include all routers - use resetRoutingTable(List<Router>) instead
+     * Reset routing table to initial state (self and direct neighbors).
+     * Routers missing from the table read as infinity.
      */
     public void resetRoutingTable() {
-        routingTable.clear();
-        nextHopTable.clear();
-        routingTable.put(name, 0);
-        nextHopTable.put(name, name);
-        
-        // Re-add direct neighbors
-        for (Map.Entry<Router, Integer> entry : neighbors.entrySet()) {
-            String neighborName = entry.getKey().getName();
-            int cost = entry.getValue();
-            routingTable.put(neighborName, cost);
-            nextHopTable.put(neighborName, neighborName);
+        equalCostOffsets = null;
+        equalCostHops = null;
+        if (costs == null) {
+            return; // Implicit table already holds only self and neighbors
         }
+        Arrays.fill(costs, INFINITY);
+        Arrays.fill(nextHops, NO_HOP);
+        seedTable();
     }
     
     /**
      * Reset routing table and include all routers in the network.
-     * Unreachable routers will have cost Integer.MAX_VALUE (infinity)
+     *
+     * @deprecated the dense table already covers every router in the owning
+     *             graph, so the list is ignored; use resetRoutingTable()
      */
+    @Deprecated
     public void resetRoutingTable(List<Router> allRouters) {
-        routingTable.clear();
-        nextHopTable.clear();
+        resetRoutingTable();
+    }
+    
+    /**
+     * Move table columns to new router ids after routers were removed from the graph.
+     * newIds maps each old id to its new id, or -1 for a removed router; since
+     * ids only shift down the columns can be compacted in place.
+     */
+    void remapTable(int[] newIds) {
+        equalCostOffsets = null;
+        equalCostHops = null;
+        if (costs == null) {
+            return;
+        }
+        int length = Math.min(costs.length, newIds.length);
+        int last = 0;
+        for (int d = 0; d < length; d++) {
+            int target = newIds[d];
+            if (target < 0) {
+                continue;
+            }
+            int hop = nextHops[d];
+            int newHop = hop >= 0 && hop < newIds.length ? newIds[hop] : NO_HOP;
+            costs[target] = newHop == NO_HOP ? INFINITY : costs[d];
+            nextHops[target] = newHop;
+            last = target + 1;
+        }
+        // Columns past the last surviving router, including ones beyond newIds, are now unused
+        Arrays.fill(costs, last, costs.length, INFINITY);
+        Arrays.fill(nextHops, last, nextHops.length, NO_HOP);
+    }
+    
+    /**
+     * Allocate the arrays from the implicit table (self and direct neighbors)
+     */
+    private void materializeTable(int minLength) {
+        int length = Math.max(minLength, owner == null ? 0 : owner.routerSlotCount());
+        costs = new int[length];
+        nextHops = new int[length];
+        Arrays.fill(costs, INFINITY);
+        Arrays.fill(nextHops, NO_HOP);
+        seedTable();
+    }
+    
+    /**
+     * Write distance 0 to self and the direct link cost to every neighbor
+     */
+    private void seedTable() {
+        if (id >= 0) {
+            setRoute(id, 0, id);
+        }
+        for (Map.Entry<Router, Integer> entry : neighbors.entrySet()) {
+            int neighborId = entry.getKey().getId();
+            if (neighborId >= 0) {
+                setRoute(neighborId, entry.getValue(), neighborId);
+            }
+        }
+    }
+    
+    private int implicitCost(int destId) {
+        if (destId < 0) {
+            return INFINITY;
+        }
+        if (destId == id) {
+            return 0;
+        }
+        if (owner == null || destId >= owner.routerSlotCount()) {
+            return INFINITY;
+        }
+        Integer linkCost = neighbors.get(owner.routerSlot(destId));
+        return linkCost == null ? INFINITY : linkCost;
+    }
+    
+    private void growTable(int minLength) {
+        int oldLength = costs.length;
+        int newLength = Math.max(minLength, oldLength * 2);
+        costs = Arrays.copyOf(costs, newLength);
+        nextHops = Arrays.copyOf(nextHops, newLength);
+        Arrays.fill(costs, oldLength, newLength, INFINITY);
+        Arrays.fill(nextHops, oldLength, newLength, NO_HOP);
+    }
+    
+    private int idOf(String routerName) {
+        if (owner == null) {
+            return routerName.equals(name) ? id : -1;
+        }
+        Router router = owner.getRouterByName(routerName);
+        return router == null ? -1 : router.getId();
+    }
+    
+    private String hopName(int hopId) {
+        return hopId == NO_HOP || owner == null ? "-" : owner.routerSlot(hopId).getName();
+    }
+    
+    /**
+     * Map view over the dense table, keyed by the names of the routers in the owning graph
+     */
+    private abstract class TableView<V> extends AbstractMap<String, V> {
+        abstract V valueAt(int destId);
+        
+        @Override
+        public int size() {
+            return owner == null ? 0 : owner.getRouterCount();
+        }
         
-        // Initialize all routers with infinity
-        for (Router router : allRouters) {
-            String routerName = router.getName();
-            if (routerName.equals(name)) {
-                // Self: cost 0
-                routingTable.put(routerName, 0);
-                nextHopTable.put(routerName, routerName);
-            } else if (neighbors.containsKey(router)) {
-                // Direct neighbor: actual cost
-                int cost = neighbors.get(router);
-                routingTable.put(routerName, cost);
-                nextHopTable.put(routerName, routerName);
-            } else {
-                // Not reachable: infinity
-                routingTable.put(routerName, Integer.MAX_VALUE);
-                nextHopTable.put(routerName, "-");
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && idOf((String) key) >= 0;
+        }
+        
+        @Override
+        public V get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int destId = idOf((String) key);
+            return destId < 0 ? null : valueAt(destId);
+        }
+        
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            if (owner == null) {
+                return Collections.emptySet();
             }
+            return new AbstractSet<Map.Entry<String, V>>() {
+                @Override
+                public int size() {
+                    return TableView.this.size();
+                }
+                
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    return new Iterator<Map.Entry<String, V>>() {
+                        private int next = 0;
+                        
+                        @Override
+                        public boolean hasNext() {
+                            return next < TableView.this.size();
+                        }
+                        
+                        @Override
+                        public Map.Entry<String, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int destId = next++;
+                            return new AbstractMap.SimpleImmutableEntry<>(
+                                owner.getRouter(destId).getName(), valueAt(destId));
+                        }
+                    };
+                }
+            };
         }
     }
     
@@ -184,4 +513,3 @@ public class Router {
         return name.hashCode();
     }
 }
-
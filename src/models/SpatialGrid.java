@@ -0,0 +1,178 @@
+package models;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Uniform grid over canvas coordinates used for hit testing.
+ * Routers are stored in the cell containing their position. Links are stored
+ * in every cell their segment crosses (the bounding box of the segment within
+ * each column of cells), so long diagonal links only cost a few cells.
+ */
+class SpatialGrid {
+    private static final int CELL_SIZE = 64; // pixels
+    
+    private final Map<Long, List<Router>> routerCells;
+    private final Map<Long, List<Link>> linkCells;
+    
+    SpatialGrid() {
+        this.routerCells = new HashMap<>();
+        this.linkCells = new HashMap<>();
+    }
+    
+    void addRouter(Router router) {
+        Point pos = router.getPosition();
+        routerCells.computeIfAbsent(cellKey(cell(pos.x), cell(pos.y)), k -> new ArrayList<>()).add(router);
+    }
+    
+    void removeRouter(Router router, Point pos) {
+        long key = cellKey(cell(pos.x), cell(pos.y));
+        List<Router> bucket = routerCells.get(key);
+        if (bucket != null) {
+            bucket.remove(router);
+            if (bucket.isEmpty()) {
+                routerCells.remove(key);
+            }
+        }
+    }
+    
+    void addLink(Link link) {
+        addLink(link, link.getSource().getPosition(), link.getDestination().getPosition());
+    }
+    
+    void removeLink(Link link) {
+        removeLink(link, link.getSource().getPosition(), link.getDestination().getPosition());
+    }
+    
+    /**
+     * Re-index a router and its links after it moved from oldPos
+     */
+    void moveRouter(Router router, Point oldPos, Iterable<Link> incidentLinks) {
+        removeRouter(router, oldPos);
+        addRouter(router);
+        for (Link link : incidentLinks) {
+            Point sourcePos = link.getSource() == router ? oldPos : link.getSource().getPosition();
+            Point destPos = link.getDestination() == router ? oldPos : link.getDestination().getPosition();
+            removeLink(link, sourcePos, destPos);
+            addLink(link);
+        }
+    }
+    
+    void clear() {
+        routerCells.clear();
+        linkCells.clear();
+    }
+    
+    /**
+     * Lowest-id router whose position lies within radius of (x, y)
+     */
+    Router routerAt(int x, int y, int radius) {
+        Router best = null;
+        long radiusSq = (long) radius * radius;
+        for (int cx = cell(x - radius); cx <= cell(x + radius); cx++) {
+            for (int cy = cell(y - radius); cy <= cell(y + radius); cy++) {
+                List<Router> bucket = routerCells.get(cellKey(cx, cy));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Router router : bucket) {
+                    Point pos = router.getPosition();
+                    long dx = x - pos.x;
+                    long dy = y - pos.y;
+                    if (dx * dx + dy * dy <= radiusSq && (best == null || router.getId() < best.getId())) {
+                        best = router;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Links whose bounding box, grown by tolerance, contains (x, y)
+     */
+    List<Link> linksNear(int x, int y, int tolerance) {
+        List<Link> result = new ArrayList<>();
+        for (int cx = cell(x - tolerance); cx <= cell(x + tolerance); cx++) {
+            for (int cy = cell(y - tolerance); cy <= cell(y + tolerance); cy++) {
+                List<Link> bucket = linkCells.get(cellKey(cx, cy));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Link link : bucket) {
+                    if (inBounds(link, x, y, tolerance) && !result.contains(link)) {
+                        result.add(link);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+    
+    private void addLink(Link link, Point a, Point b) {
+        forEachCell(a, b, key -> linkCells.computeIfAbsent(key, k -> new ArrayList<>()).add(link));
+    }
+    
+    private void removeLink(Link link, Point a, Point b) {
+        forEachCell(a, b, key -> {
+            List<Link> bucket = linkCells.get(key);
+            if (bucket != null) {
+                bucket.remove(link);
+                if (bucket.isEmpty()) {
+                    linkCells.remove(key);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Visit the cells crossed by segment a-b: for each column of cells, the
+     * rows spanned by the part of the segment inside that column
+     */
+    private static void forEachCell(Point a, Point b, LongConsumer action) {
+        if (a.x > b.x) {
+            Point swap = a;
+            a = b;
+            b = swap;
+        }
+        int firstColumn = cell(a.x);
+        int lastColumn = cell(b.x);
+        double slope = a.x == b.x ? 0 : (double) (b.y - a.y) / (b.x - a.x);
+        for (int cx = firstColumn; cx <= lastColumn; cx++) {
+            int y1;
+            int y2;
+            if (firstColumn == lastColumn) {
+                y1 = a.y;
+                y2 = b.y;
+            } else {
+                // Column edges are continuous, so evaluate up to the next column's start
+                int x1 = Math.max(a.x, cx * CELL_SIZE);
+                int x2 = Math.min(b.x, (cx + 1) * CELL_SIZE);
+                y1 = (int) Math.floor(a.y + slope * (x1 - a.x));
+                y2 = (int) Math.floor(a.y + slope * (x2 - a.x));
+            }
+            for (int cy = cell(Math.min(y1, y2)); cy <= cell(Math.max(y1, y2)); cy++) {
+                action.accept(cellKey(cx, cy));
+            }
+        }
+    }
+    
+    private static boolean inBounds(Link link, int x, int y, int tolerance) {
+        Point a = link.getSource().getPosition();
+        Point b = link.getDestination().getPosition();
+        return x >= Math.min(a.x, b.x) - tolerance && x <= Math.max(a.x, b.x) + tolerance &&
+               y >= Math.min(a.y, b.y) - tolerance && y <= Math.max(a.y, b.y) + tolerance;
+    }
+    
+    private static int cell(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+    
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
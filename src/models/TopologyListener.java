@@ -0,0 +1,26 @@
+package models;
+
+/**
+ * Notified after the topology of a NetworkGraph changes.
+ * Changes made inside a batch produce a single topologyChanged notification
+ * when the outermost batch commits. The detailed callbacks are delivered for
+ * every individual change as it happens, also inside a batch, for listeners
+ * that maintain derived state incrementally.
+ */
+public interface TopologyListener {
+    void topologyChanged(NetworkGraph graph);
+    
+    /**
+     * A link was added, removed or changed cost. Router.INFINITY stands for
+     * an absent link, so oldCost is INFINITY for a new link and newCost is
+     * INFINITY for a removed one. Router ids are those at the time of the change.
+     */
+    default void linkChanged(NetworkGraph graph, Link link, int oldCost, int newCost) {
+    }
+    
+    /**
+     * Routers were added or removed, or the graph was cleared; router ids may have changed
+     */
+    default void routersChanged(NetworkGraph graph) {
+    }
+}
@@ -0,0 +1,120 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Immutable compressed-sparse-row view of the network topology.
+ * Routers are addressed by their dense id; the links of router i are the
+ * edge slots offset(i) .. offset(i + 1) - 1, each with a target id and a cost.
+ * Every undirected link appears once in each direction.
+ *
+ * Snapshots never change after construction, so they can be shared freely
+ * between threads and algorithm runs.
+ */
+public final class TopologySnapshot {
+    private final Router[] routers;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] costs;
+    private final int minCost;
+    private final int maxCost;
+    private final long epoch;
+    
+    TopologySnapshot(List<Router> routerList, Iterable<Link> links, int linkCount, long epoch) {
+        this.epoch = epoch;
+        int n = routerList.size();
+        this.routers = routerList.toArray(new Router[0]);
+        this.offsets = new int[n + 1];
+        this.targets = new int[linkCount * 2];
+        this.costs = new int[linkCount * 2];
+        
+        // Count degrees, then turn them into row offsets
+        for (Link link : links) {
+            offsets[link.getSource().getId() + 1]++;
+            offsets[link.getDestination().getId() + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        
+        int[] fill = new int[n];
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Link link : links) {
+            int u = link.getSource().getId();
+            int v = link.getDestination().getId();
+            int cost = link.getCost();
+            
+            int slot = offsets[u] + fill[u]++;
+            targets[slot] = v;
+            costs[slot] = cost;
+            
+            slot = offsets[v] + fill[v]++;
+            targets[slot] = u;
+            costs[slot] = cost;
+            
+            min = Math.min(min, cost);
+            max = Math.max(max, cost);
+        }
+        this.minCost = linkCount == 0 ? 0 : min;
+        this.maxCost = linkCount == 0 ? 0 : max;
+    }
+    
+    /**
+     * Topology epoch of the graph this snapshot was taken from
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+    
+    /**
+     * Number of routers (ids run from 0 to size() - 1)
+     */
+    public int size() {
+        return routers.length;
+    }
+    
+    /**
+     * Number of directed edge slots (twice the number of links)
+     */
+    public int edgeCount() {
+        return targets.length;
+    }
+    
+    public Router getRouter(int id) {
+        return routers[id];
+    }
+    
+    /**
+     * First edge slot of a router; the row ends at offset(id + 1)
+     */
+    public int offset(int id) {
+        return offsets[id];
+    }
+    
+    public int degree(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+    
+    public int target(int slot) {
+        return targets[slot];
+    }
+    
+    public int cost(int slot) {
+        return costs[slot];
+    }
+    
+    /**
+     * Smallest link cost in the snapshot (0 when there are no links)
+     */
+    public int getMinCost() {
+        return minCost;
+    }
+    
+    /**
+     * Largest link cost in the snapshot (0 when there are no links)
+     */
+    public int getMaxCost() {
+        return maxCost;
+    }
+}
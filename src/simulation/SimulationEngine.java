@@ -1,9 +1,10 @@
 package simulation;
 
 import algorithms.DistanceVector;
-import algorithms.LinkState;
+import algorithms.IncrementalLinkState;
 import models.NetworkGraph;
 import models.Router;
+import models.TopologySnapshot;
 import javax.swing.*;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -23,7 +24,9 @@ public class SimulationEngine {
     private Router sourceRouter;
     private Timer timer;
     private DistanceVector distanceVector;
-    private LinkState linkState;
+    private DistanceVector.Mode distanceVectorMode = DistanceVector.Mode.TRIGGERED;
+    private IncrementalLinkState linkStateEngine; // keeps shortest path trees between runs
+    private SwingWorker<Void, Void> linkStateWorker;
     
     private Consumer<Map<String, Map<String, Object>>> onUpdate;
     private Runnable onComplete;
@@ -32,6 +35,7 @@ public class SimulationEngine {
     public SimulationEngine(NetworkGraph graph) {
         this.graph = graph;
         this.isRunning = false;
+        this.linkStateEngine = new IncrementalLinkState(graph);
     }
     
     /**
@@ -48,6 +52,13 @@ public class SimulationEngine {
         this.onComplete = callback;
     }
     
+    /**
+     * Set how Distance Vector routers exchange updates in later simulations
+     */
+    public void setDistanceVectorMode(DistanceVector.Mode mode) {
+        this.distanceVectorMode = mode;
+    }
+    
     /**
      * Start simulation with specified algorithm and source
      */
@@ -61,6 +72,7 @@ public class SimulationEngine {
         
         // Reset routing tables
         graph.resetRoutingTables();
+        linkStateEngine.tablesChanged();
         
         if (algorithm == AlgorithmType.DISTANCE_VECTOR) {
             startDistanceVectorSimulation();
@@ -71,6 +83,7 @@ public class SimulationEngine {
     
     private void startDistanceVectorSimulation() {
         distanceVector = new DistanceVector(graph);
+        distanceVector.setMode(distanceVectorMode);
         isRunning = true;
         
         timer = new Timer(500, e -> { // Update every 500ms
@@ -95,41 +108,66 @@ public class SimulationEngine {
     }
     
     private void startLinkStateSimulation() {
-        linkState = new LinkState(graph);
         isRunning = true;
         
         // For Link State, we can animate the computation
-        Timer linkStateTimer = new Timer(300, e -> {
-            // Run Link State algorithm
-            linkState.run(sourceRouter);
-            
-            // Also compute for other routers for full view
-            linkState.runForAllRouters();
-            
-            // Notify GUI to update
-            if (onUpdate != null) {
-                Map<String, Map<String, Object>> tables = new java.util.HashMap<>();
-                for (Router router : graph.getRouters()) {
-                    Map<String, Object> tableData = new java.util.HashMap<>();
-                    tableData.put("routingTable", router.getRoutingTable());
-                    tableData.put("nextHopTable", router.getNextHopTable());
-                    tables.put(router.getName(), tableData);
-                }
-                onUpdate.accept(tables);
-            }
-            
-            if (onComplete != null) {
-                onComplete.run();
-            }
-            
-            stopSimulation();
-        });
-        
+        Timer linkStateTimer = new Timer(300, e -> runLinkState());
         linkStateTimer.setRepeats(false); // Run once
         linkStateTimer.start();
         this.timer = linkStateTimer;
     }
     
+    private void runLinkState() {
+        // Build the snapshot here so the worker only reads immutable topology
+        TopologySnapshot snapshot = graph.getSnapshot();
+        
+        // All-pairs SPF is the expensive part, so keep it off the event thread
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                // Compute for every router for full view; only the trees
+                // touched by link changes since the last run are repaired.
+                // The routers' tables are left alone until done().
+                linkStateEngine.update(snapshot);
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                if (linkStateWorker != this) {
+                    return; // Stopped or superseded while running
+                }
+                linkStateWorker = null;
+                if (graph.getSnapshot().getEpoch() != snapshot.getEpoch()) {
+                    // The topology changed while the run was in progress; catch up with it
+                    runLinkState();
+                    return;
+                }
+                linkStateEngine.publish();
+                
+                // Notify GUI to update
+                if (onUpdate != null) {
+                    Map<String, Map<String, Object>> tables = new java.util.HashMap<>();
+                    for (Router router : graph.getRouters()) {
+                        Map<String, Object> tableData = new java.util.HashMap<>();
+                        tableData.put("routingTable", router.getRoutingTable());
+                        tableData.put("nextHopTable", router.getNextHopTable());
+                        tables.put(router.getName(), tableData);
+                    }
+                    onUpdate.accept(tables);
+                }
+                
+                if (onComplete != null) {
+                    onComplete.run();
+                }
+                
+                stopSimulation();
+            }
+        };
+        linkStateWorker = worker;
+        worker.execute();
+    }
+    
     /**
      * Stop the simulation
      */
@@ -138,6 +176,12 @@ public class SimulationEngine {
             timer.stop();
             timer = null;
         }
+        if (linkStateWorker != null) {
+            // A Link State run in progress only writes the engine's own trees;
+            // it is cancelled here, so done() never publishes them
+            linkStateWorker.cancel(false);
+            linkStateWorker = null;
+        }
         isRunning = false;
     }
     
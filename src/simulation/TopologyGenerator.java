@@ -0,0 +1,386 @@
+package simulation;
+
+import models.NetworkGraph;
+import models.Router;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongConsumer;
+
+/**
+ * Generates synthetic network topologies for scale testing.
+ * Every generator clears the graph first, names routers R1, R2, ... and
+ * assigns canvas positions. Generation is reproducible for a given seed,
+ * runs in time proportional to the number of routers plus candidate links
+ * and is applied to the graph as a single batch.
+ */
+public class TopologyGenerator {
+    private static final int MARGIN = 30; // keep routers away from the canvas edge
+    
+    /**
+     * Chooses the cost of a generated link
+     */
+    public interface CostDistribution {
+        /**
+         * @param random   the generator's seeded random source
+         * @param distance canvas distance between the two routers
+         */
+        int nextCost(Random random, double distance);
+    }
+    
+    private final Random random;
+    private CostDistribution costDistribution;
+    private int width;
+    private int height;
+    
+    public TopologyGenerator(long seed) {
+        this.random = new Random(seed);
+        this.costDistribution = uniformCosts(1, 10);
+        this.width = 800;
+        this.height = 600;
+    }
+    
+    public void setCostDistribution(CostDistribution costDistribution) {
+        this.costDistribution = costDistribution;
+    }
+    
+    /**
+     * Set the canvas area that router positions are spread over
+     */
+    public void setCanvasSize(int width, int height) {
+        this.width = Math.max(width, 2 * MARGIN + 1);
+        this.height = Math.max(height, 2 * MARGIN + 1);
+    }
+    
+    /**
+     * Costs drawn uniformly from [min, max]
+     */
+    public static CostDistribution uniformCosts(int min, int max) {
+        return (random, distance) -> min + random.nextInt(max - min + 1);
+    }
+    
+    /**
+     * The same cost on every link
+     */
+    public static CostDistribution constantCost(int cost) {
+        return (random, distance) -> cost;
+    }
+    
+    /**
+     * Costs proportional to the canvas distance between routers (at least 1)
+     */
+    public static CostDistribution distanceCosts(double costPerPixel) {
+        return (random, distance) -> Math.max(1, (int) Math.round(distance * costPerPixel));
+    }
+    
+    /**
+     * Erdős–Rényi G(n, p): every pair of routers is linked with probability p.
+     * Pairs are skipped geometrically, so the work is O(n + links).
+     */
+    public void erdosRenyi(NetworkGraph graph, int n, double p) {
+        graph.beginBatch();
+        try {
+            Router[] routers = addRandomRouters(graph, n);
+            forEachSampledPair(n, p, (u, v) -> link(graph, routers[u], routers[v]));
+        } finally {
+            graph.commitBatch();
+        }
+    }
+    
+    /**
+     * Waxman graph: routers are placed at random and each pair is linked with
+     * probability beta * exp(-d / (alpha * L)), where L is the canvas diagonal.
+     * Routers are bucketed into square cells about alpha * L wide (at most
+     * about 4 * sqrt(n) cells). For every pair of cells, candidate pairs are
+     * skipped geometrically at the probability of the cells' closest points
+     * and then thinned by their actual distance, so the work is
+     * O(n + cells^2 + links) rather than O(n^2).
+     */
+    public void waxman(NetworkGraph graph, int n, double alpha, double beta) {
+        graph.beginBatch();
+        try {
+            Router[] routers = addRandomRouters(graph, n);
+            double scale = alpha * Math.hypot(width, height);
+            
+            double areaWidth = width - 2 * MARGIN;
+            double areaHeight = height - 2 * MARGIN;
+            double cellSize = Math.max(scale, Math.sqrt(areaWidth * areaHeight / (4 * Math.sqrt(n) + 1)));
+            int columns = Math.max(1, (int) Math.ceil(areaWidth / cellSize));
+            int rows = Math.max(1, (int) Math.ceil(areaHeight / cellSize));
+            
+            // Routers sorted by cell: cell c holds members[cellStart[c] .. cellStart[c + 1])
+            int cellCount = columns * rows;
+            int[] cellOf = new int[n];
+            int[] cellStart = new int[cellCount + 1];
+            for (int i = 0; i < n; i++) {
+                int column = Math.min(columns - 1, (int) ((routers[i].getPosition().x - MARGIN) / cellSize));
+                int row = Math.min(rows - 1, (int) ((routers[i].getPosition().y - MARGIN) / cellSize));
+                cellOf[i] = row * columns + column;
+                cellStart[cellOf[i] + 1]++;
+            }
+            for (int c = 0; c < cellCount; c++) {
+                cellStart[c + 1] += cellStart[c];
+            }
+            int[] members = new int[n];
+            int[] fill = Arrays.copyOf(cellStart, cellCount);
+            for (int i = 0; i < n; i++) {
+                members[fill[cellOf[i]]++] = i;
+            }
+            
+            for (int a = 0; a < cellCount; a++) {
+                for (int b = a; b < cellCount; b++) {
+                    int gapX = Math.max(0, Math.abs(a % columns - b % columns) - 1);
+                    int gapY = Math.max(0, Math.abs(a / columns - b / columns) - 1);
+                    double bound = Math.min(1, beta * Math.exp(-Math.hypot(gapX, gapY) * cellSize / scale));
+                    int startA = cellStart[a];
+                    int startB = cellStart[b];
+                    int countB = cellStart[b + 1] - startB;
+                    PairConsumer candidate = (u, v) -> {
+                        Router first = routers[u];
+                        Router second = routers[v];
+                        double p = Math.min(1, beta * Math.exp(-distance(first, second) / scale));
+                        if (random.nextDouble() * bound < p) {
+                            link(graph, first, second);
+                        }
+                    };
+                    if (a == b) {
+                        forEachSampledPair(countB, bound,
+                            (u, v) -> candidate.accept(members[startA + u], members[startA + v]));
+                    } else {
+                        long pairCount = (long) (cellStart[a + 1] - startA) * countB;
+                        forEachSampledIndex(pairCount, bound, index -> candidate.accept(
+                            members[startA + (int) (index / countB)], members[startB + (int) (index % countB)]));
+                    }
+                }
+            }
+        } finally {
+            graph.commitBatch();
+        }
+    }
+    
+    /**
+     * Barabási–Albert preferential attachment: starts from a clique of m + 1
+     * routers, then each new router links to m distinct existing routers
+     * chosen with probability proportional to their degree.
+     */
+    public void barabasiAlbert(NetworkGraph graph, int n, int m) {
+        if (m < 1) {
+            throw new IllegalArgumentException("Each new router needs at least one link: " + m);
+        }
+        graph.beginBatch();
+        try {
+            Router[] routers = addRandomRouters(graph, n);
+            int initial = Math.min(n, m + 1);
+            
+            // Every link contributes both endpoints, so sampling this array is degree-proportional
+            int[] endpoints = new int[2 * (initial * (initial - 1) / 2 + Math.max(0, n - initial) * m)];
+            int endpointCount = 0;
+            for (int u = 0; u < initial; u++) {
+                for (int v = u + 1; v < initial; v++) {
+                    link(graph, routers[u], routers[v]);
+                    endpoints[endpointCount++] = u;
+                    endpoints[endpointCount++] = v;
+                }
+            }
+            
+            int[] chosen = new int[m];
+            for (int u = initial; u < n; u++) {
+                int count = 0;
+                while (count < m) {
+                    int candidate = endpoints[random.nextInt(endpointCount)];
+                    boolean duplicate = false;
+                    for (int i = 0; i < count; i++) {
+                        if (chosen[i] == candidate) {
+                            duplicate = true;
+                            break;
+                        }
+                    }
+                    if (!duplicate) {
+                        chosen[count++] = candidate;
+                    }
+                }
+                for (int i = 0; i < m; i++) {
+                    link(graph, routers[u], routers[chosen[i]]);
+                    endpoints[endpointCount++] = u;
+                    endpoints[endpointCount++] = chosen[i];
+                }
+            }
+        } finally {
+            graph.commitBatch();
+        }
+    }
+    
+    /**
+     * rows x cols grid; with torus the last row and column wrap around
+     */
+    public void grid(NetworkGraph graph, int rows, int cols, boolean torus) {
+        graph.beginBatch();
+        try {
+            graph.clear();
+            Router[] routers = new Router[rows * cols];
+            double stepX = cols > 1 ? (double) (width - 2 * MARGIN) / (cols - 1) : 0;
+            double stepY = rows > 1 ? (double) (height - 2 * MARGIN) / (rows - 1) : 0;
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    int index = r * cols + c;
+                    routers[index] = graph.addRouter("R" + (index + 1),
+                        MARGIN + (int) Math.round(c * stepX), MARGIN + (int) Math.round(r * stepY));
+                }
+            }
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    Router router = routers[r * cols + c];
+                    if (c + 1 < cols || (torus && cols > 2)) {
+                        link(graph, router, routers[r * cols + (c + 1) % cols]);
+                    }
+                    if (r + 1 < rows || (torus && rows > 2)) {
+                        link(graph, router, routers[((r + 1) % rows) * cols + c]);
+                    }
+                }
+            }
+        } finally {
+            graph.commitBatch();
+        }
+    }
+    
+    /**
+     * k-ary fat-tree (k even) made of switches only: (k/2)^2 core routers and
+     * k pods of k/2 aggregation and k/2 edge routers, 5k^2/4 routers in total.
+     * Every edge router links to all aggregation routers in its pod, and
+     * aggregation router i of each pod links to core routers i*k/2 .. i*k/2 + k/2 - 1.
+     */
+    public void fatTree(NetworkGraph graph, int k) {
+        if (k < 2 || k % 2 != 0) {
+            throw new IllegalArgumentException("Fat-tree arity must be even and at least 2: " + k);
+        }
+        graph.beginBatch();
+        try {
+            graph.clear();
+            int half = k / 2;
+            int coreCount = half * half;
+            int podRouters = k * half;
+            int usableWidth = width - 2 * MARGIN;
+            int counter = 1;
+            
+            // Three layers: core at the top, aggregation in the middle, edge at the bottom
+            Router[] core = new Router[coreCount];
+            for (int i = 0; i < coreCount; i++) {
+                core[i] = graph.addRouter("R" + counter++, MARGIN + spread(i, coreCount, usableWidth), MARGIN);
+            }
+            Router[] aggregation = new Router[podRouters];
+            Router[] edge = new Router[podRouters];
+            for (int i = 0; i < podRouters; i++) {
+                aggregation[i] = graph.addRouter("R" + counter++,
+                    MARGIN + spread(i, podRouters, usableWidth), height / 2);
+            }
+            for (int i = 0; i < podRouters; i++) {
+                edge[i] = graph.addRouter("R" + counter++,
+                    MARGIN + spread(i, podRouters, usableWidth), height - MARGIN);
+            }
+            
+            for (int pod = 0; pod < k; pod++) {
+                for (int a = 0; a < half; a++) {
+                    Router agg = aggregation[pod * half + a];
+                    for (int e = 0; e < half; e++) {
+                        link(graph, edge[pod * half + e], agg);
+                    }
+                    for (int c = 0; c < half; c++) {
+                        link(graph, agg, core[a * half + c]);
+                    }
+                }
+            }
+        } finally {
+            graph.commitBatch();
+        }
+    }
+    
+    private Router[] addRandomRouters(NetworkGraph graph, int n) {
+        graph.clear();
+        Router[] routers = new Router[n];
+        for (int i = 0; i < n; i++) {
+            int x = MARGIN + random.nextInt(width - 2 * MARGIN);
+            int y = MARGIN + random.nextInt(height - 2 * MARGIN);
+            routers[i] = graph.addRouter("R" + (i + 1), x, y);
+        }
+        return routers;
+    }
+    
+    private void link(NetworkGraph graph, Router a, Router b) {
+        graph.addLink(a, b, costDistribution.nextCost(random, distance(a, b)));
+    }
+    
+    private interface PairConsumer {
+        void accept(int u, int v);
+    }
+    
+    /**
+     * Visit each unordered pair (u, v), v < u < n, independently with probability p,
+     * jumping over skipped pairs with geometrically distributed gaps
+     * (Batagelj and Brandes).
+     */
+    private void forEachSampledPair(int n, double p, PairConsumer action) {
+        if (p <= 0 || n < 2) {
+            return;
+        }
+        if (p >= 1) {
+            for (int u = 1; u < n; u++) {
+                for (int v = 0; v < u; v++) {
+                    action.accept(u, v);
+                }
+            }
+            return;
+        }
+        double logSkip = Math.log1p(-p); // log(1 - p) would round to 0 for tiny p
+        double pairCount = (double) n * (n - 1) / 2;
+        int u = 1;
+        long v = -1;
+        while (u < n) {
+            double skip = Math.floor(Math.log(1 - random.nextDouble()) / logSkip);
+            if (skip >= pairCount) {
+                return; // Jumped past the last pair
+            }
+            v += 1 + (long) skip;
+            while (v >= u && u < n) {
+                v -= u;
+                u++;
+            }
+            if (u < n) {
+                action.accept(u, (int) v);
+            }
+        }
+    }
+    
+    /**
+     * Visit each index below count independently with probability p, jumping
+     * over skipped indexes with geometrically distributed gaps
+     */
+    private void forEachSampledIndex(long count, double p, LongConsumer action) {
+        if (p <= 0 || count < 1) {
+            return;
+        }
+        if (p >= 1) {
+            for (long index = 0; index < count; index++) {
+                action.accept(index);
+            }
+            return;
+        }
+        double logSkip = Math.log1p(-p); // log(1 - p) would round to 0 for tiny p
+        long index = -1;
+        while (true) {
+            double skip = Math.floor(Math.log(1 - random.nextDouble()) / logSkip);
+            if (skip >= count - index - 1) {
+                return; // Jumped past the last index
+            }
+            index += 1 + (long) skip;
+            action.accept(index);
+        }
+    }
+    
+    private static double distance(Router a, Router b) {
+        return a.getPosition().distance(b.getPosition());
+    }
+    
+    private static int spread(int index, int count, int span) {
+        return count > 1 ? (int) ((long) index * span / (count - 1)) : span / 2;
+    }
+}
@@ -0,0 +1,228 @@
+package storage;
+
+import models.NetworkGraph;
+import models.Router;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary snapshot of converged all-pairs routing state.
+ *
+ * Layout (big-endian):
+ *   int magic ("RTBL"), int version, int routerCount
+ *   routerCount x { unsigned short nameLength, UTF-8 name bytes }
+ *   zero padding up to a multiple of 4 bytes
+ *   routerCount x routerCount int costs     (row = source id, column = destination id)
+ *   routerCount x routerCount int next hops (router index, -1 if unreachable)
+ *
+ * The matrices are fixed-size rows, so an opened file answers route queries
+ * straight from the memory-mapped pages without loading the whole table.
+ */
+public class RoutingTableFile {
+    private static final int MAGIC = 0x5254424C; // "RTBL"
+    private static final int VERSION = 1;
+    private static final long MAX_CHUNK_BYTES = 1L << 30; // rows per mapping are capped at 1 GiB
+    
+    private final String[] names;
+    private final Map<String, Integer> indexByName;
+    private final IntBuffer[] costChunks;
+    private final IntBuffer[] nextHopChunks;
+    private final int rowsPerChunk;
+    
+    private RoutingTableFile(String[] names, IntBuffer[] costChunks, IntBuffer[] nextHopChunks, int rowsPerChunk) {
+        this.names = names;
+        this.indexByName = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            indexByName.put(names[i], i);
+        }
+        this.costChunks = costChunks;
+        this.nextHopChunks = nextHopChunks;
+        this.rowsPerChunk = rowsPerChunk;
+    }
+    
+    /**
+     * Write the routing tables of every router in the graph
+     */
+    public static void save(NetworkGraph graph, File file) throws IOException {
+        int n = graph.getRouterCount();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            
+            long headerBytes = 12;
+            for (Router router : graph.getRouters()) {
+                byte[] name = router.getName().getBytes(StandardCharsets.UTF_8);
+                if (name.length > 0xFFFF) {
+                    throw new IOException("Router name too long: " + router.getName());
+                }
+                out.writeShort(name.length);
+                out.write(name);
+                headerBytes += 2 + name.length;
+            }
+            for (long i = headerBytes; i % 4 != 0; i++) {
+                out.writeByte(0);
+            }
+            
+            for (Router source : graph.getRouters()) {
+                for (int destination = 0; destination < n; destination++) {
+                    out.writeInt(source.getCost(destination));
+                }
+            }
+            for (Router source : graph.getRouters()) {
+                for (int destination = 0; destination < n; destination++) {
+                    out.writeInt(source.getNextHopId(destination));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Map a routing table file for querying
+     */
+    public static RoutingTableFile open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long fileSize = channel.size();
+            
+            String[] names;
+            long matrixStart;
+            try {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, 12));
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not a routing table file: " + file.getName());
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported routing table file version: " + version);
+                }
+                int n = header.getInt();
+                if (n < 0) {
+                    throw new IOException("Corrupt routing table file header");
+                }
+                
+                // The name table is small next to the matrices; map at most what it can span
+                long nameTableLimit = Math.min(fileSize - 12, Math.min(Integer.MAX_VALUE, (long) n * (2 + 0xFFFF)));
+                ByteBuffer nameTable = channel.map(FileChannel.MapMode.READ_ONLY, 12, nameTableLimit);
+                names = new String[n];
+                byte[] nameBytes = new byte[256];
+                for (int i = 0; i < n; i++) {
+                    int nameLength = nameTable.getShort() & 0xFFFF;
+                    if (nameLength > nameBytes.length) {
+                        nameBytes = new byte[nameLength];
+                    }
+                    nameTable.get(nameBytes, 0, nameLength);
+                    names[i] = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                }
+                matrixStart = (12 + nameTable.position() + 3) & ~3L;
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated routing table file: " + file.getName(), e);
+            }
+            
+            int n = names.length;
+            long matrixBytes = (long) n * n * 4;
+            if (matrixStart + 2 * matrixBytes > fileSize) {
+                throw new IOException("Truncated routing table file: " + file.getName());
+            }
+            
+            long rowBytes = Math.max(4L, (long) n * 4);
+            int rowsPerChunk = (int) Math.max(1, MAX_CHUNK_BYTES / rowBytes);
+            int chunkCount = n == 0 ? 0 : (n + rowsPerChunk - 1) / rowsPerChunk;
+            IntBuffer[] costChunks = mapRows(channel, matrixStart, n, rowsPerChunk, chunkCount);
+            IntBuffer[] nextHopChunks = mapRows(channel, matrixStart + matrixBytes, n, rowsPerChunk, chunkCount);
+            return new RoutingTableFile(names, costChunks, nextHopChunks, rowsPerChunk);
+        }
+    }
+    
+    private static IntBuffer[] mapRows(FileChannel channel, long start, int n, int rowsPerChunk, int chunkCount)
+            throws IOException {
+        IntBuffer[] chunks = new IntBuffer[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            int rows = Math.min(rowsPerChunk, n - c * rowsPerChunk);
+            long offset = start + (long) c * rowsPerChunk * n * 4;
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * n * 4).asIntBuffer();
+        }
+        return chunks;
+    }
+    
+    public int getRouterCount() {
+        return names.length;
+    }
+    
+    public String getRouterName(int index) {
+        return names[index];
+    }
+    
+    /**
+     * Index of a router in this file, or -1 if it is not present
+     */
+    public int indexOf(String name) {
+        Integer index = indexByName.get(name);
+        return index == null ? -1 : index;
+    }
+    
+    /**
+     * Stored cost from source to destination (Router.INFINITY if unreachable)
+     */
+    public int getCost(int source, int destination) {
+        return costChunks[source / rowsPerChunk].get((source % rowsPerChunk) * names.length + destination);
+    }
+    
+    /**
+     * Stored next hop index from source to destination (Router.NO_HOP if unreachable)
+     */
+    public int getNextHop(int source, int destination) {
+        return nextHopChunks[source / rowsPerChunk].get((source % rowsPerChunk) * names.length + destination);
+    }
+    
+    /**
+     * Warm-start a graph: copy the stored routes of every router that exists in
+     * both the file and the graph, matching routers by name.
+     * Returns the number of routers whose tables were restored.
+     */
+    public int applyTo(NetworkGraph graph) {
+        int n = names.length;
+        int[] graphIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            Router router = graph.getRouterByName(names[i]);
+            graphIds[i] = router == null ? -1 : router.getId();
+        }
+        
+        int restored = 0;
+        for (int source = 0; source < n; source++) {
+            if (graphIds[source] < 0) {
+                continue;
+            }
+            Router router = graph.getRouter(graphIds[source]);
+            router.resetRoutingTable();
+            for (int destination = 0; destination < n; destination++) {
+                if (graphIds[destination] < 0) {
+                    continue;
+                }
+                int hop = getNextHop(source, destination);
+                int graphHop = hop >= 0 && hop < n ? graphIds[hop] : -1;
+                if (graphHop < 0) {
+                    // Unreachable, or the next hop no longer exists
+                    router.setRoute(graphIds[destination], Router.INFINITY, Router.NO_HOP);
+                } else {
+                    router.setRoute(graphIds[destination], getCost(source, destination), graphHop);
+                }
+            }
+            restored++;
+        }
+        return restored;
+    }
+}
@@ -0,0 +1,145 @@
+package storage;
+
+import models.Link;
+import models.NetworkGraph;
+import models.Router;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary topology file: a router table followed by an edge list.
+ *
+ * Layout (big-endian):
+ *   int magic ("RTOP"), int version, int routerCount, int linkCount
+ *   routerCount x { unsigned short nameLength, UTF-8 name bytes, int x, int y }
+ *   linkCount   x { int sourceIndex, int destinationIndex, int cost }
+ *
+ * Router indexes in the edge list refer to the order of the router table.
+ * Files are read through a memory-mapped FileChannel and written as a stream.
+ */
+public class TopologyFile {
+    private static final int MAGIC = 0x52544F50; // "RTOP"
+    private static final int VERSION = 1;
+    
+    private TopologyFile() {
+    }
+    
+    /**
+     * Write the routers and links of a graph to a file
+     */
+    public static void save(NetworkGraph graph, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(graph.getRouterCount());
+            out.writeInt(graph.getLinks().size());
+            
+            for (Router router : graph.getRouters()) {
+                byte[] name = router.getName().getBytes(StandardCharsets.UTF_8);
+                if (name.length > 0xFFFF) {
+                    throw new IOException("Router name too long: " + router.getName());
+                }
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeInt(router.getPosition().x);
+                out.writeInt(router.getPosition().y);
+            }
+            
+            // Router ids are dense, so they double as indexes into the router table
+            for (Link link : graph.getLinks()) {
+                out.writeInt(link.getSource().getId());
+                out.writeInt(link.getDestination().getId());
+                out.writeInt(link.getCost());
+            }
+        }
+    }
+    
+    /**
+     * Replace the contents of a graph with the topology stored in a file.
+     * The whole file is read and checked first, so a truncated or corrupt
+     * file leaves the graph untouched.
+     */
+    public static void load(File file, NetworkGraph graph) throws IOException {
+        String[] names;
+        int[] positions; // x, y per router
+        int[] linkRecords; // source, destination, cost per link
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Topology file too large to map: " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            
+            try {
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a topology file: " + file.getName());
+                }
+                int version = buffer.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported topology file version: " + version);
+                }
+                int routerCount = buffer.getInt();
+                int linkCount = buffer.getInt();
+                // Every router record takes at least 10 bytes and every link record 12
+                if (routerCount < 0 || linkCount < 0
+                        || 16 + 10L * routerCount + 12L * linkCount > size) {
+                    throw new IOException("Corrupt topology file header");
+                }
+                
+                names = new String[routerCount];
+                positions = new int[2 * routerCount];
+                byte[] nameBytes = new byte[256];
+                for (int i = 0; i < routerCount; i++) {
+                    int nameLength = buffer.getShort() & 0xFFFF;
+                    if (nameLength > nameBytes.length) {
+                        nameBytes = new byte[nameLength];
+                    }
+                    buffer.get(nameBytes, 0, nameLength);
+                    names[i] = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                    positions[2 * i] = buffer.getInt();
+                    positions[2 * i + 1] = buffer.getInt();
+                }
+                
+                linkRecords = new int[3 * linkCount];
+                for (int i = 0; i < linkCount; i++) {
+                    int source = buffer.getInt();
+                    int destination = buffer.getInt();
+                    int cost = buffer.getInt();
+                    if (source < 0 || source >= routerCount || destination < 0 || destination >= routerCount) {
+                        throw new IOException("Corrupt link record " + i + ": router index out of range");
+                    }
+                    linkRecords[3 * i] = source;
+                    linkRecords[3 * i + 1] = destination;
+                    linkRecords[3 * i + 2] = cost;
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated topology file: " + file.getName(), e);
+            }
+        }
+        
+        graph.beginBatch();
+        try {
+            graph.clear();
+            Router[] routers = new Router[names.length];
+            for (int i = 0; i < names.length; i++) {
+                routers[i] = graph.addRouter(names[i], positions[2 * i], positions[2 * i + 1]);
+            }
+            for (int i = 0; i < linkRecords.length; i += 3) {
+                graph.addLink(routers[linkRecords[i]], routers[linkRecords[i + 1]], linkRecords[i + 2]);
+            }
+        } finally {
+            graph.commitBatch();
+        }
+    }
+}